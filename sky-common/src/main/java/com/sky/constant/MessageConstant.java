@@ -27,5 +27,10 @@ public class MessageConstant {
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
     public static final String DISH_BE_STOPED_BY_SETMEAL = "当前菜品关联了套餐,不能停售";
+    public static final String PAGE_CURSOR_INVALID = "分页游标不合法";
+    public static final String DATE_RANGE_ERROR = "日期范围错误";
+    public static final String REPORT_EXPORT_BUSY = "导出任务过多，请稍后再试";
+    public static final String REPORT_EXPORT_JOB_NOT_FOUND = "导出任务不存在或已过期";
+    public static final String REPORT_EXPORT_NOT_FINISHED = "导出任务尚未完成";
 
 }
@@ -0,0 +1,12 @@
+package com.sky.exception;
+
+/**
+ * 报表导出异常
+ */
+public class ReportExportException extends BaseException {
+
+    public ReportExportException(String msg) {
+        super(msg);
+    }
+
+}
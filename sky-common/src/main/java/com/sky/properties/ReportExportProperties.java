@@ -0,0 +1,24 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 异步导出运营数据报表相关配置
+ */
+@Component
+@ConfigurationProperties(prefix = "sky.report.export")
+@Data
+public class ReportExportProperties {
+
+    //导出任务和文件在redis中保存的时间(分钟), 从任务完成时开始计算, 超时后删除
+    private long ttlMinutes = 60;
+
+    //执行导出任务的线程数量
+    private int threads = 2;
+
+    //等待执行的导出任务的最大数量, 超出时拒绝新的导出任务
+    private int queueCapacity = 10;
+
+}
@@ -0,0 +1,24 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 统计查询并行执行相关配置
+ */
+@Component
+@ConfigurationProperties(prefix = "sky.report.query")
+@Data
+public class ReportQueryProperties {
+
+    //并行执行统计查询的线程数量
+    private int threads = 8;
+
+    //等待执行的统计查询的最大数量, 超出时由调用方线程直接执行
+    private int queueCapacity = 100;
+
+    //单个统计查询的超时时间(毫秒), 超时后该项数据使用默认值
+    private long timeoutMillis = 2000;
+
+}
@@ -0,0 +1,20 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 雪花算法订单号生成器相关配置, 对应配置文件中sky.snowflake前缀的配置项
+ */
+@Component
+@ConfigurationProperties(prefix = "sky.snowflake")
+@Data
+public class SnowflakeProperties {
+
+    /**
+     * 机器id, 取值范围0-1023, 多个sky-server节点部署时每个节点必须配置不同的值
+     */
+    private long workerId;
+
+}
@@ -0,0 +1,27 @@
+package com.sky.result;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 封装游标分页查询结果
+ * 使用上一页最后一条记录的位置作为游标查询下一页, 无论翻到第几页查询代价都相同
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageResult implements Serializable {
+
+    private List records; //当前页数据集合
+
+    private String nextCursor; //查询下一页时需要传入的游标, 没有下一页时为null
+
+    private boolean hasMore; //是否还有下一页
+
+    private Long total; //总记录数, 只有请求时指定需要统计才会返回, 否则为null
+
+}
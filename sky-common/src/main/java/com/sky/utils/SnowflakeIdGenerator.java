@@ -0,0 +1,104 @@
+package com.sky.utils;
+
+import com.sky.properties.SnowflakeProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法id生成器, 用于生成订单号
+ * id由 41位时间戳(毫秒, 相对于EPOCH) + 10位机器id + 12位毫秒内序列号 组成, 同一节点上严格递增, 不同节点之间不会重复, 并且大致按时间有序
+ * <p>
+ * 生成过程不加锁, 时间戳和序列号合并保存在一个AtomicLong中通过CAS更新:
+ * 同一毫秒内序列号加1, 序列号用完时自动进位到下一毫秒;
+ * 发生时钟回拨时不会等待也不会报错, 而是沿用上一次的时间戳继续递增, 等系统时钟追上后再恢复使用系统时间, 保证id不重复且单调递增
+ */
+@Component
+@Slf4j
+public class SnowflakeIdGenerator {
+
+    //起始时间 2023-01-01 00:00:00 (UTC+8)
+    public static final long EPOCH = 1672502400000L;
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int WORKER_ID_SHIFT = SEQUENCE_BITS;
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+
+    private final long workerId;
+
+    //高位为上一次使用的时间戳(相对于EPOCH), 低12位为序列号
+    private final AtomicLong state = new AtomicLong();
+
+    //作为spring bean创建时使用配置文件中的机器id
+    @Autowired
+    public SnowflakeIdGenerator(SnowflakeProperties snowflakeProperties) {
+        this(snowflakeProperties.getWorkerId());
+    }
+
+    //直接指定机器id, 用于单元测试和基准测试
+    public SnowflakeIdGenerator(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId必须在0到" + MAX_WORKER_ID + "之间: " + workerId);
+        }
+        this.workerId = workerId;
+        log.info("初始化雪花算法id生成器, workerId:{}", workerId);
+    }
+
+    /**
+     * 生成下一个id
+     *
+     * @return
+     */
+    public long nextId() {
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            long now = System.currentTimeMillis() - EPOCH;
+
+            //进入新的毫秒, 序列号从0开始; 否则(同一毫秒或时钟回拨)在上一次的基础上加1, 序列号溢出时会自动进位到时间戳
+            long next = now > lastTimestamp ? now << SEQUENCE_BITS : current + 1;
+
+            if (state.compareAndSet(current, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & SEQUENCE_MASK;
+                return (timestamp << TIMESTAMP_SHIFT) | (workerId << WORKER_ID_SHIFT) | sequence;
+            }
+        }
+    }
+
+    /**
+     * 生成字符串形式的id, 用作订单号
+     *
+     * @return
+     */
+    public String nextIdStr() {
+        return String.valueOf(nextId());
+    }
+
+    /**
+     * 从id中解析出生成时的时间戳(毫秒)
+     *
+     * @param id
+     * @return
+     */
+    public static long getTimestamp(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    /**
+     * 从id中解析出机器id
+     *
+     * @param id
+     * @return
+     */
+    public static long getWorkerId(long id) {
+        return (id >>> WORKER_ID_SHIFT) & MAX_WORKER_ID;
+    }
+}
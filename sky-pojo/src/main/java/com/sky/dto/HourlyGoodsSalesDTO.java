@@ -0,0 +1,24 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HourlyGoodsSalesDTO implements Serializable {
+    //下单时间所在的整点
+    private LocalDateTime hour;
+
+    //商品名称
+    private String name;
+
+    //销量
+    private Integer number;
+}
@@ -0,0 +1,30 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class IntradayOrderStatsDTO implements Serializable {
+    //下单日期
+    private LocalDate date;
+
+    //下单时间在当天的时段序号, 从0点开始每15分钟一个时段
+    private Integer slot;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数(已完成订单的数量)
+    private Integer validOrderCount;
+
+    //营业额(已完成订单的金额合计)
+    private Double turnover;
+}
@@ -0,0 +1,27 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 按订单状态分组统计的订单数量
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OrderStatusCountDTO implements Serializable {
+    //下单日期, 只有按日期和状态分组统计时才有值
+    private LocalDate date;
+
+    //订单状态
+    private Integer status;
+
+    //该状态下的订单数量
+    private Integer count;
+}
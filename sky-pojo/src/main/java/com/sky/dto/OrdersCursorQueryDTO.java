@@ -0,0 +1,21 @@
+package com.sky.dto;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+/**
+ * 订单游标分页查询条件, 查询条件与OrdersPageQueryDTO相同, 使用游标代替页码
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class OrdersCursorQueryDTO extends OrdersPageQueryDTO implements Serializable {
+
+    //上一页返回的游标, 查询第一页时为空
+    private String cursor;
+
+    //是否需要统计总记录数, 默认不统计
+    private boolean withTotal;
+
+}
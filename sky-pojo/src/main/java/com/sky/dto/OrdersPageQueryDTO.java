@@ -5,6 +5,7 @@ import org.springframework.format.annotation.DateTimeFormat;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 public class OrdersPageQueryDTO implements Serializable {
@@ -27,4 +28,14 @@ public class OrdersPageQueryDTO implements Serializable {
 
     private Long userId;
 
+    //以下字段由服务端根据订单搜索索引填充, 不接收前端传入的值
+    //可能匹配订单号、手机号关键字的订单id
+    private List<Long> candidateIds;
+
+    //id不大于该值的订单都已经建立索引, 大于该值的订单仍需要使用like查询
+    private Long indexedMaxId;
+
+    //索引只保留最近的订单, id小于该值的订单没有建立索引, 仍需要使用like查询; 为null表示全部订单都在索引中
+    private Long indexedMinId;
+
 }
@@ -0,0 +1,61 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每日营业数据汇总
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyBusinessStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //日期
+    private LocalDate date;
+
+    //营业额
+    private BigDecimal turnover;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数(已完成)
+    private Integer validOrderCount;
+
+    //各状态订单数, 已完成订单数即有效订单数
+    private Integer pendingPaymentCount;
+    private Integer toBeConfirmedCount;
+    private Integer confirmedCount;
+    private Integer deliveryInProgressCount;
+    private Integer cancelledCount;
+
+    //新增用户数
+    private Integer newUsers;
+
+    //截止当天的用户总数
+    private Integer totalUsers;
+
+    //更新时间
+    private LocalDateTime updateTime;
+
+    /**
+     * 所有数量都为0的一天, 用于累加增量
+     *
+     * @param date
+     * @return
+     */
+    public static DailyBusinessStats zero(LocalDate date) {
+        return new DailyBusinessStats(date, BigDecimal.ZERO, 0, 0, 0, 0, 0, 0, 0, 0, 0, LocalDateTime.now());
+    }
+}
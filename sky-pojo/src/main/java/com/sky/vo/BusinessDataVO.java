@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * 数据概览
@@ -26,4 +27,6 @@ public class BusinessDataVO implements Serializable {
 
     private Integer newUsers;//新增用户数
 
+    private List<String> degraded;//查询超时或失败而使用默认值的统计项, 为null表示所有数据都是准确的
+
 }
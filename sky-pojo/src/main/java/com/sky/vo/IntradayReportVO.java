@@ -0,0 +1,35 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 一天内分时段的订单和营业额数据
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IntradayReportVO implements Serializable {
+
+    //日期
+    private LocalDate date;
+
+    //每个时段的分钟数, 第i个时段从 i * slotMinutes 分钟开始
+    private Integer slotMinutes;
+
+    //每个时段的订单数
+    private int[] orderCountList;
+
+    //每个时段的有效订单数
+    private int[] validOrderCountList;
+
+    //每个时段的营业额
+    private double[] turnoverList;
+
+}
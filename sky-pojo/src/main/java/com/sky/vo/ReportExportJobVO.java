@@ -0,0 +1,42 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReportExportJobVO implements Serializable {
+
+    //任务id
+    private String jobId;
+
+    //导出的开始日期
+    private LocalDate begin;
+
+    //导出的结束日期
+    private LocalDate end;
+
+    //任务状态 PENDING等待执行 RUNNING执行中 SUCCESS已完成 FAILED失败
+    private String status;
+
+    //进度 0-100
+    private Integer progress;
+
+    //失败原因
+    private String message;
+
+    //提交时间
+    private LocalDateTime createTime;
+
+    //完成时间
+    private LocalDateTime finishTime;
+
+}
@@ -19,4 +19,7 @@ public class SalesTop10ReportVO implements Serializable {
     //销量列表，以逗号分隔，例如：260,215,200
     private String numberList;
 
+    //销量是否为精确值, 内存中的近似统计在一个小时内售出的商品种类过多时可能偏大
+    private Boolean exact;
+
 }
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * 套餐总览
@@ -20,4 +21,7 @@ public class SetmealOverViewVO implements Serializable {
 
     // 已停售数量
     private Integer discontinued;
+
+    // 查询超时或失败而使用默认值的统计项, 为null表示所有数据都是准确的
+    private List<String> degraded;
 }
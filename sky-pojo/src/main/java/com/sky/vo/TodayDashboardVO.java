@@ -0,0 +1,26 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 工作台今日实时数据
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TodayDashboardVO implements Serializable {
+
+    private LocalDate date;//日期
+
+    private BusinessDataVO businessData;//今日营业数据
+
+    private OrderOverViewVO orderOverView;//今日订单概览
+
+}
@@ -0,0 +1,119 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * redis缓存数据的编码
+ * 数据编码为带类型信息的json(非final类型的对象带有@class属性), 超过压缩阈值并且压缩后更小时使用LZ4压缩;
+ * 编码后的格式: 1字节标识 + 1字节标记(是否压缩) + [压缩时4字节原始长度] + 数据。
+ * 之前使用JDK序列化写入的数据(以0xAC开头)仍然按JDK序列化读取, 不需要清空redis。
+ * json忽略未知的属性, 类增加或删除字段后旧的缓存数据仍然可以读取
+ */
+public class CacheValueCodec implements RedisSerializer<Object> {
+
+    //编码后数据的第一个字节
+    private static final byte MAGIC = 'S';
+    //JDK序列化数据的第一个字节(0xACED)
+    private static final byte JDK_MAGIC = (byte) 0xAC;
+
+    private static final byte FLAG_PLAIN = 0;
+    private static final byte FLAG_LZ4 = 1;
+
+    private static final int HEADER_LENGTH = 2;
+
+    private final ObjectMapper objectMapper;
+    private final int compressThreshold;
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    /**
+     * @param compressThreshold json长度超过该值(字节)时尝试压缩
+     */
+    public CacheValueCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+
+        //只允许反序列化项目中的类和jdk中的类
+        BasicPolymorphicTypeValidator typeValidator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType("com.sky.")
+                .allowIfSubType("java.")
+                .build();
+        this.objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .activateDefaultTyping(typeValidator, ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(value);
+        } catch (Exception e) {
+            throw new SerializationException("Could not write cache value: " + e.getMessage(), e);
+        }
+
+        if (json.length > compressThreshold) {
+            byte[] compressed = new byte[compressor.maxCompressedLength(json.length)];
+            int compressedLength = compressor.compress(json, 0, json.length, compressed, 0, compressed.length);
+            if (compressedLength + Integer.BYTES < json.length) {
+                return ByteBuffer.allocate(HEADER_LENGTH + Integer.BYTES + compressedLength)
+                        .put(MAGIC)
+                        .put(FLAG_LZ4)
+                        .putInt(json.length)
+                        .put(compressed, 0, compressedLength)
+                        .array();
+            }
+        }
+
+        return ByteBuffer.allocate(HEADER_LENGTH + json.length)
+                .put(MAGIC)
+                .put(FLAG_PLAIN)
+                .put(json)
+                .array();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == JDK_MAGIC) {
+            return jdkSerializer.deserialize(bytes);
+        }
+        if (bytes[0] != MAGIC || bytes.length < HEADER_LENGTH) {
+            throw new SerializationException("Unknown cache value format");
+        }
+
+        try {
+            if (bytes[1] == FLAG_LZ4) {
+                int length = ByteBuffer.wrap(bytes, HEADER_LENGTH, Integer.BYTES).getInt();
+                byte[] json = decompressor.decompress(bytes, HEADER_LENGTH + Integer.BYTES, length);
+                return objectMapper.readValue(json, Object.class);
+            }
+            return objectMapper.readValue(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, Object.class);
+        } catch (Exception e) {
+            throw new SerializationException("Could not read cache value: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.sky.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 菜品缓存的版本化key
+ * 每个分类有自己的版本号, 另外还有一个全局版本号, 两个版本号都嵌入到缓存key中: dish_{分类id}_v{全局版本号}.{分类版本号};
+ * 清理缓存时只需要INCR对应的版本号(一次O(1)的操作), 之后的查询自然使用新的key, 旧版本的数据不再被读取, 由过期时间自动删除,
+ * 不再需要用KEYS命令扫描整个redis; 同时清理各个节点本地缓存中对应分类的菜品
+ */
+@Component
+public class DishCacheNamespace {
+
+    //缓存数据的过期时间, 旧版本的数据最多保留这么久
+    public static final Duration TTL = Duration.ofHours(1);
+
+    //本地缓存的名称, key: 分类id的字符串形式, value: 菜品列表响应数据的快照(MenuSnapshot)
+    public static final String LOCAL_CACHE_NAME = "dishCache";
+
+    private static final String KEY_PREFIX = "dish_";
+    private static final String GLOBAL_GENERATION_KEY = "dish_generation";
+    private static final String CATEGORY_GENERATION_KEY_PREFIX = "dish_generation_";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private NearCacheManager nearCacheManager;
+
+    /**
+     * 分类当前版本的缓存key, 一次MGET同时读取全局版本号和分类版本号
+     *
+     * @param categoryId
+     * @return
+     */
+    public String currentKey(Long categoryId) {
+        List<String> generations = stringRedisTemplate.opsForValue()
+                .multiGet(Arrays.asList(GLOBAL_GENERATION_KEY, CATEGORY_GENERATION_KEY_PREFIX + categoryId));
+        String global = generations == null ? null : generations.get(0);
+        String category = generations == null ? null : generations.get(1);
+        return KEY_PREFIX + categoryId + "_v" + (global == null ? "0" : global) + "." + (category == null ? "0" : category);
+    }
+
+    /**
+     * 清理某个分类的菜品缓存
+     *
+     * @param categoryId
+     */
+    public void invalidate(Long categoryId) {
+        stringRedisTemplate.opsForValue().increment(CATEGORY_GENERATION_KEY_PREFIX + categoryId);
+        nearCacheManager.evict(LOCAL_CACHE_NAME, String.valueOf(categoryId));
+    }
+
+    /**
+     * 清理所有分类的菜品缓存
+     */
+    public void invalidateAll() {
+        stringRedisTemplate.opsForValue().increment(GLOBAL_GENERATION_KEY);
+        nearCacheManager.clear(LOCAL_CACHE_NAME);
+    }
+}
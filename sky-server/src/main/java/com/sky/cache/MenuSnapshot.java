@@ -0,0 +1,118 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sky.json.JacksonObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 菜单响应数据快照
+ * 菜单只在管理端修改后才会变化, 所以把最终返回给前端的json(UTF-8编码, 较大时另外保存一份gzip压缩后的数据)保存下来,
+ * 之后的请求直接把这些字节写入响应, 不需要再反序列化缓存数据, 也不需要再经过消息转换器序列化为json。
+ * json使用与消息转换器相同的JacksonObjectMapper生成, 与正常返回的格式一致
+ */
+public class MenuSnapshot {
+
+    //json超过该长度(字节)时保存gzip压缩后的数据
+    private static final int GZIP_THRESHOLD = 1024;
+
+    private static final ObjectMapper OBJECT_MAPPER = new JacksonObjectMapper();
+
+    private final byte[] body;
+    //未压缩时为null
+    private final byte[] gzipBody;
+
+    private MenuSnapshot(byte[] body, byte[] gzipBody) {
+        this.body = body;
+        this.gzipBody = gzipBody;
+    }
+
+    /**
+     * 将返回结果序列化为快照
+     *
+     * @param result
+     * @return
+     */
+    public static MenuSnapshot of(Object result) {
+        try {
+            byte[] body = OBJECT_MAPPER.writeValueAsBytes(result);
+            return new MenuSnapshot(body, body.length > GZIP_THRESHOLD ? gzip(body) : null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 将快照写入响应, 客户端支持gzip时写入压缩后的数据
+     *
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    public void writeTo(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        byte[] bytes = body;
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (gzipBody != null && acceptsGzip(acceptEncoding)) {
+            bytes = gzipBody;
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+    }
+
+    /**
+     * 客户端是否接受gzip, 按Accept-Encoding中gzip(没有时按*)的q值判断, q=0表示不接受
+     *
+     * @param acceptEncoding
+     * @return
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQuality = null;
+        Double anyQuality = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim();
+            double quality = 1.0;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if ("gzip".equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding)) {
+                gzipQuality = quality;
+            } else if ("*".equals(coding)) {
+                anyQuality = quality;
+            }
+        }
+        if (gzipQuality != null) {
+            return gzipQuality > 0;
+        }
+        return anyQuality != null && anyQuality > 0;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(bytes);
+        }
+        return outputStream.toByteArray();
+    }
+}
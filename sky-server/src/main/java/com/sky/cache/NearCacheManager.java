@@ -0,0 +1,133 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地近端缓存(L1)
+ * 每个缓存名称对应一个有数量上限的Caffeine缓存, 放在redis缓存(L2)前面, 命中时不需要访问redis也不需要反序列化;
+ * 清理缓存时除了清理本节点, 还通过redis的发布订阅通知其他sky-server节点清理各自的本地缓存。
+ * 消息丢失或清理与加载并发时本地缓存可能短暂保留旧数据, 最多保留EXPIRE_AFTER_WRITE的时间。
+ * 命中率通过 /actuator/metrics/cache.gets?tag=cache:near.xxx 查看
+ */
+@Component
+@Slf4j
+public class NearCacheManager implements MessageListener {
+
+    //发布清理消息的频道
+    public static final String CHANNEL = "sky:cache:invalidate";
+
+    //每个缓存的最大数量和写入后的过期时间
+    private static final long MAXIMUM_SIZE = 1000;
+    private static final Duration EXPIRE_AFTER_WRITE = Duration.ofSeconds(60);
+
+    //清理消息中表示清理全部的key
+    private static final String ALL_KEYS = "*";
+    private static final String SEPARATOR = " ";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    //本节点的标识, 收到自己发布的消息时忽略
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<String, Cache<Object, Object>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * 获取指定名称的本地缓存, 不存在时创建
+     *
+     * @param name
+     * @return
+     */
+    public Cache<Object, Object> getCache(String name) {
+        return caches.computeIfAbsent(name, key -> {
+            Cache<Object, Object> cache = Caffeine.newBuilder()
+                    .maximumSize(MAXIMUM_SIZE)
+                    .expireAfterWrite(EXPIRE_AFTER_WRITE)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "near." + name);
+            return cache;
+        });
+    }
+
+    /**
+     * 注册其他组件自行创建的本地缓存(容量和过期时间不同于默认配置), 注册后同样通过evict和clear在各个节点之间同步清理
+     *
+     * @param name
+     * @param cache
+     */
+    public void register(String name, Cache<Object, Object> cache) {
+        caches.put(name, cache);
+    }
+
+    /**
+     * 清理本节点和其他节点本地缓存中的一个key
+     *
+     * @param name
+     * @param key
+     */
+    public void evict(String name, Object key) {
+        getCache(name).invalidate(key);
+        publish(name, String.valueOf(key));
+    }
+
+    /**
+     * 清理本节点和其他节点的整个本地缓存
+     *
+     * @param name
+     */
+    public void clear(String name) {
+        getCache(name).invalidateAll();
+        publish(name, ALL_KEYS);
+    }
+
+    /**
+     * 收到其他节点发布的清理消息, 格式: 节点标识 缓存名称 key(*表示全部)
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        Cache<Object, Object> cache = caches.get(parts[1]);
+        if (cache == null) {
+            return;
+        }
+        if (ALL_KEYS.equals(parts[2])) {
+            cache.invalidateAll();
+        } else {
+            //本地缓存的key可能是Long等类型, 按字符串形式比较
+            cache.asMap().keySet().removeIf(key -> parts[2].equals(String.valueOf(key)));
+        }
+    }
+
+    private void publish(String name, String key) {
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, nodeId + SEPARATOR + name + SEPARATOR + key);
+        } catch (Exception e) {
+            //其他节点的本地缓存会在过期后自动失效
+            log.error("发布缓存清理消息失败:{} {}", name, key, e);
+        }
+    }
+}
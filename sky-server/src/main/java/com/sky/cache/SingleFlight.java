@@ -0,0 +1,173 @@
+package com.sky.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 缓存未命中时合并并发的加载请求
+ * 同一个节点上同一个key同时只有一个线程执行加载, 其他线程等待同一个结果;
+ * 多个节点之间通过redis的短期锁(SET NX PX)保证同一时间只有一个节点查询数据库, 没有拿到锁的节点轮询缓存等待加载结果,
+ * 锁释放或超时后缓存中仍然没有数据时自己加载。redis不可用时退化为只在本节点内合并。
+ * 合并的请求数量通过 cache.singleflight.coalesced 指标查看(scope=local本节点等待, scope=remote等待其他节点),
+ * 实际执行的加载次数通过 cache.singleflight.loads 指标查看
+ */
+@Component
+@Slf4j
+public class SingleFlight {
+
+    private static final String LOCK_KEY_PREFIX = "lock:load:";
+    //锁的过期时间, 也是等待其他节点加载的最长时间
+    private static final Duration LOCK_TTL = Duration.ofSeconds(3);
+    //等待其他节点加载时轮询缓存的间隔
+    private static final long RETRY_INTERVAL_MILLIS = 50;
+    //等待本节点其他线程加载的最长时间
+    private static final long WAIT_TIMEOUT_MILLIS = 5000;
+
+    //只删除自己持有的锁
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    //正在加载的key
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 加载key对应的数据, 同一个key的并发请求只执行一次loader
+     *
+     * @param name   缓存名称, 用于指标
+     * @param key    缓存key
+     * @param reader 读取缓存, 等待其他节点加载时使用, 未命中时返回null
+     * @param loader 查询数据库并写入缓存
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String name, String key, Supplier<T> reader, Supplier<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            meterRegistry.counter("cache.singleflight.coalesced", "cache", name, "scope", "local").increment();
+            return (T) await(name, existing, loader);
+        }
+
+        try {
+            T value = loadWithLock(name, key, reader, loader);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 获取redis锁后加载, 锁被其他节点持有时等待其他节点写入缓存
+     *
+     * @param name
+     * @param key
+     * @param reader
+     * @param loader
+     * @return
+     */
+    private <T> T loadWithLock(String name, String key, Supplier<T> reader, Supplier<T> loader) {
+        String lockKey = LOCK_KEY_PREFIX + key;
+        String token = UUID.randomUUID().toString();
+        Boolean locked;
+        try {
+            locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, LOCK_TTL);
+        } catch (Exception e) {
+            log.error("获取缓存加载锁失败, 直接加载:{}", key, e);
+            return doLoad(name, loader);
+        }
+
+        if (Boolean.TRUE.equals(locked)) {
+            try {
+                return doLoad(name, loader);
+            } finally {
+                unlock(lockKey, token);
+            }
+        }
+
+        meterRegistry.counter("cache.singleflight.coalesced", "cache", name, "scope", "remote").increment();
+        long deadline = System.currentTimeMillis() + LOCK_TTL.toMillis();
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(RETRY_INTERVAL_MILLIS);
+                T value = reader.get();
+                if (value != null) {
+                    return value;
+                }
+                //其他节点已经释放锁但缓存中仍然没有数据(加载失败或数据为空), 不再等待
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(lockKey))) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return doLoad(name, loader);
+    }
+
+    private <T> T doLoad(String name, Supplier<T> loader) {
+        meterRegistry.counter("cache.singleflight.loads", "cache", name).increment();
+        return loader.get();
+    }
+
+    /**
+     * 等待本节点其他线程的加载结果, 超时后自己加载
+     *
+     * @param name
+     * @param future
+     * @param loader
+     * @return
+     */
+    private Object await(String name, CompletableFuture<Object> future, Supplier<?> loader) {
+        try {
+            return future.get(WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return doLoad(name, loader);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return doLoad(name, loader);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void unlock(String lockKey, String token) {
+        try {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+        } catch (Exception e) {
+            //锁会在过期后自动释放
+            log.error("释放缓存加载锁失败:{}", lockKey, e);
+        }
+    }
+}
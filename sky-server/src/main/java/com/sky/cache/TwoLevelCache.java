@@ -0,0 +1,119 @@
+package com.sky.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 两级缓存
+ * 读取时先查本地缓存(L1), 未命中再查redis缓存(L2)并放入本地缓存; 清理时同时清理两级缓存, 并通知其他节点清理本地缓存。
+ * 同步加载(@Cacheable(sync = true))时两级缓存都未命中的并发请求通过SingleFlight合并, 同一个key只查询一次数据库
+ */
+public class TwoLevelCache implements Cache {
+
+    private final String name;
+    private final Cache redisCache;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> localCache;
+    private final NearCacheManager nearCacheManager;
+    private final SingleFlight singleFlight;
+
+    public TwoLevelCache(String name, Cache redisCache, NearCacheManager nearCacheManager, SingleFlight singleFlight) {
+        this.name = name;
+        this.redisCache = redisCache;
+        this.localCache = nearCacheManager.getCache(name);
+        this.nearCacheManager = nearCacheManager;
+        this.singleFlight = singleFlight;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object value = localCache.getIfPresent(key);
+        if (value != null) {
+            return new SimpleValueWrapper(value);
+        }
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper != null && wrapper.get() != null) {
+            localCache.put(key, wrapper.get());
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = localCache.getIfPresent(key);
+        if (value != null) {
+            return (T) value;
+        }
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper != null) {
+            value = wrapper.get();
+            if (value != null) {
+                localCache.put(key, value);
+            }
+            return (T) value;
+        }
+
+        T loaded = singleFlight.load(name, name + "::" + key,
+                () -> {
+                    ValueWrapper cached = redisCache.get(key);
+                    return cached == null ? null : (T) cached.get();
+                },
+                () -> {
+                    T result;
+                    try {
+                        result = valueLoader.call();
+                    } catch (Exception e) {
+                        throw new ValueRetrievalException(key, valueLoader, e);
+                    }
+                    redisCache.put(key, result);
+                    return result;
+                });
+        if (loaded != null) {
+            localCache.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        if (value != null) {
+            localCache.put(key, value);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        nearCacheManager.evict(name, key);
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        nearCacheManager.clear(name);
+    }
+}
@@ -0,0 +1,39 @@
+package com.sky.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 两级缓存管理器, 每个缓存名称由本地缓存(L1)和redisCacheManager中的同名缓存(L2)组成
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final CacheManager redisCacheManager;
+    private final NearCacheManager nearCacheManager;
+    private final SingleFlight singleFlight;
+
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager redisCacheManager, NearCacheManager nearCacheManager, SingleFlight singleFlight) {
+        this.redisCacheManager = redisCacheManager;
+        this.nearCacheManager = nearCacheManager;
+        this.singleFlight = singleFlight;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, key -> {
+            Cache redisCache = redisCacheManager.getCache(key);
+            return redisCache == null ? null : new TwoLevelCache(key, redisCache, nearCacheManager, singleFlight);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+}
@@ -0,0 +1,61 @@
+package com.sky.config;
+
+import com.sky.cache.CacheValueCodec;
+import com.sky.cache.NearCacheManager;
+import com.sky.cache.SingleFlight;
+import com.sky.cache.TwoLevelCacheManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+/**
+ * 缓存配置
+ * @Cacheable等缓存注解使用两级缓存: 本地缓存(L1) + redis缓存(L2), 本地缓存通过redis的发布订阅在各个节点之间同步清理
+ */
+@Configuration
+@Slf4j
+public class CacheConfiguration {
+
+    /**
+     * 两级缓存管理器, redis缓存的value使用与redisTemplate相同的编码
+     * @param redisConnectionFactory
+     * @param nearCacheManager
+     * @param cacheValueCodec
+     * @param singleFlight
+     * @return
+     */
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory, NearCacheManager nearCacheManager,
+                                     CacheValueCodec cacheValueCodec, SingleFlight singleFlight) {
+        log.info("开始创建两级缓存管理器...");
+        RedisCacheConfiguration redisCacheConfiguration = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(cacheValueCodec));
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
+                .cacheDefaults(redisCacheConfiguration)
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        return new TwoLevelCacheManager(redisCacheManager, nearCacheManager, singleFlight);
+    }
+
+    /**
+     * 订阅缓存清理消息
+     * @param redisConnectionFactory
+     * @param nearCacheManager
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                            NearCacheManager nearCacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(nearCacheManager, new ChannelTopic(NearCacheManager.CHANNEL));
+        return container;
+    }
+}
@@ -1,5 +1,6 @@
 package com.sky.config;
 
+import com.sky.cache.CacheValueCodec;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -19,21 +20,38 @@ public class RedisConfiguration {
 
     //目标: 修改RedisTemplate对象默认使用的jdk序列化器为字符串序列化器
 
+    //缓存数据超过该长度(字节)时使用LZ4压缩
+    private static final int COMPRESS_THRESHOLD = 1024;
+
+    /**
+     * redis缓存数据的编码, redisTemplate和@Cacheable使用的redis缓存共用
+     * @return
+     */
+    @Bean
+    public CacheValueCodec cacheValueCodec() {
+        return new CacheValueCodec(COMPRESS_THRESHOLD);
+    }
+
     /**
      * 使用bean注解注入RedisConnectionFactory redis连接工厂, 该对象由springboot自动创建
      * 实际上@Bean注解是用来声明redisTemplate方法返回的对象是一个Spring管理的bean
      * 注意序列化器的类型设置是在配置类中而不是在测试类或者是要使用的一般类中, 在一般类中编写的是传入的数据类型而不是序列化器的类型设置
      * @param redisConnectionFactory
+     * @param cacheValueCodec
      * @return
      */
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory){
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory, CacheValueCodec cacheValueCodec){
         log.info("开始创建redisTemplate模板对象...");
         RedisTemplate redisTemplate = new RedisTemplate();
         //设置redis连接工厂对象
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //设置redis key的序列化器, 否则key和value会出现乱码默认设置的是jdk序列化, 需要设置的是字符串类型的redis序列化器, 但是value不需要更改, 因为value中的读取是直接使用Java中的反序列化
         redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        //value不再使用jdk序列化, 改为带类型信息的json编码(较大时压缩), 体积更小, 类的字段变化后也可以读取
+        redisTemplate.setValueSerializer(cacheValueCodec);
+        redisTemplate.setHashValueSerializer(cacheValueCodec);
         return redisTemplate;
     }
 }
@@ -0,0 +1,78 @@
+package com.sky.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 数据库结构初始化
+ * 项目启动时(其他组件访问数据库之前)执行resources/sql下的脚本, 已经存在的表和索引不会重复创建:
+ * 建表语句使用create table if not exists; mysql的索引语句不支持if not exists, 先查询information_schema, 缺少时才执行
+ */
+@Component
+@Slf4j
+public class SchemaInitializer {
+
+    //按顺序执行的脚本
+    private static final String[] SCRIPTS = {"sql/daily_business_stats.sql", "sql/orders_index.sql"};
+
+    //alter table 表名 add index 索引名 (...)
+    private static final Pattern ADD_INDEX = Pattern.compile(
+            "alter\\s+table\\s+`?(\\w+)`?\\s+add\\s+index\\s+`?(\\w+)`?.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        for (String script : SCRIPTS) {
+            for (String statement : readStatements(script)) {
+                execute(statement);
+            }
+        }
+    }
+
+    private void execute(String statement) {
+        Matcher matcher = ADD_INDEX.matcher(statement);
+        if (matcher.matches() && indexExists(matcher.group(1), matcher.group(2))) {
+            return;
+        }
+        log.info("初始化数据库结构:{}", statement);
+        jdbcTemplate.execute(statement);
+    }
+
+    private boolean indexExists(String table, String index) {
+        Integer count = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.statistics where table_schema = database() and table_name = ? and index_name = ?",
+                Integer.class, table, index);
+        return count != null && count > 0;
+    }
+
+    private List<String> readStatements(String script) {
+        EncodedResource resource = new EncodedResource(new ClassPathResource(script), StandardCharsets.UTF_8);
+        try (InputStream inputStream = resource.getResource().getInputStream()) {
+            String sql = StreamUtils.copyToString(inputStream, StandardCharsets.UTF_8);
+            List<String> statements = new ArrayList<>();
+            ScriptUtils.splitSqlScript(resource, sql, ScriptUtils.DEFAULT_STATEMENT_SEPARATOR, ScriptUtils.DEFAULT_COMMENT_PREFIXES,
+                    ScriptUtils.DEFAULT_BLOCK_COMMENT_START_DELIMITER, ScriptUtils.DEFAULT_BLOCK_COMMENT_END_DELIMITER, statements);
+            return statements;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.sky.config;
 
+import com.sky.websocket.MerchantNotificationBus;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.web.socket.server.standard.ServerEndpointExporter;
 
 /**
@@ -15,4 +19,19 @@ public class WebSocketConfiguration {
         return new ServerEndpointExporter();
     }
 
+    /**
+     * 订阅需要推送给所有节点上商家端的消息
+     * @param redisConnectionFactory
+     * @param merchantNotificationBus
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer merchantNotificationListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                               MerchantNotificationBus merchantNotificationBus) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(merchantNotificationBus, new ChannelTopic(MerchantNotificationBus.CHANNEL));
+        return container;
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.DishCacheNamespace;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
@@ -12,11 +13,9 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.annotations.Delete;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * 菜品管理
@@ -31,17 +30,7 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
-
-    /**
-     * 清理指定key的缓存, 主要是抽取代码实现抽取的相关代码封装
-     *
-     * @param pattern
-     */
-    private void cleanCache(String pattern) {
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
-    }
+    private DishCacheNamespace dishCacheNamespace;
 
     /**
      * 新增菜品和对应的口味
@@ -57,8 +46,8 @@ public class DishController {
 
         //清理缓存数据, 调用redisTemplate的delete方法, 删除redis中的数据
 //        redisTemplate.delete("dish_" + dishDTO.getCategoryId());
-        //清理缓存数据
-        cleanCache("dish_" + dishDTO.getCategoryId());
+        //清理缓存数据, 只需要递增该分类的缓存版本号
+        dishCacheNamespace.invalidate(dishDTO.getCategoryId());
         return Result.success();
     }
 
@@ -98,8 +87,8 @@ public class DishController {
         //Set keys = redisTemplate.keys("dish_");
         //redisTemplate.delete(keys);
 
-        //清理缓存数据
-        cleanCache("dish_");
+        //清理缓存数据, 递增全局缓存版本号使所有分类的缓存失效
+        dishCacheNamespace.invalidateAll();
         return Result.success();
     }
 
@@ -134,8 +123,8 @@ public class DishController {
         /*Set keys = redisTemplate.keys("dish_");
         redisTemplate.delete(keys);*/
 
-        //清理缓存数据
-        cleanCache("dish_");
+        //清理缓存数据, 递增全局缓存版本号使所有分类的缓存失效
+        dishCacheNamespace.invalidateAll();
 
         return Result.success();
     }
@@ -147,8 +136,8 @@ public class DishController {
         log.info("菜品起售停售: status={}, id={}", status, id);
         dishService.startOrStop(status, id);
 
-        //清理缓存数据
-        cleanCache("dish_");
+        //清理缓存数据, 递增全局缓存版本号使所有分类的缓存失效
+        dishCacheNamespace.invalidateAll();
         return Result.success();
     }
 
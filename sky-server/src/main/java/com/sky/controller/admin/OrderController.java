@@ -2,8 +2,10 @@ package com.sky.controller.admin;
 
 import com.sky.dto.OrdersCancelDTO;
 import com.sky.dto.OrdersConfirmDTO;
+import com.sky.dto.OrdersCursorQueryDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersRejectionDTO;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
@@ -40,6 +42,19 @@ public class OrderController {
         return Result.success(pageResult);
     }
 
+    /**
+     * 订单搜索(游标分页)
+     *
+     * @param ordersCursorQueryDTO
+     * @return
+     */
+    @GetMapping("/conditionSearch/cursor")
+    @ApiOperation("订单搜索(游标分页)")
+    public Result<CursorPageResult> conditionSearchByCursor(OrdersCursorQueryDTO ordersCursorQueryDTO) {
+        CursorPageResult cursorPageResult = orderService.conditionSearchByCursor(ordersCursorQueryDTO);
+        return Result.success(cursorPageResult);
+    }
+
     /**
      * 各个状态的订单数量统计
      *
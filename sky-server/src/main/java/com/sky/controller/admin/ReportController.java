@@ -2,7 +2,9 @@ package com.sky.controller.admin;
 
 import com.sky.result.Result;
 import com.sky.service.ReportService;
+import com.sky.vo.IntradayReportVO;
 import com.sky.vo.OrderReportVO;
+import com.sky.vo.ReportExportJobVO;
 import com.sky.vo.SalesTop10ReportVO;
 import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
@@ -13,10 +15,13 @@ import org.apache.commons.collections4.Get;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.time.LocalDate;
 
 /**
@@ -93,14 +98,127 @@ public class ReportController {
         return Result.success(reportService.getSalesTop10(begin, end));
     }
 
+    /**
+     * 分时段统计, 每15分钟一个时段
+     * @param date 不传时为今天
+     * @return
+     */
+    @GetMapping("/intraday")
+    @ApiOperation("分时段统计")
+    public Result<IntradayReportVO> intraday(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date) {
+        log.info("分时段数据统计:{}", date);
+        return Result.success(reportService.getIntradayStatistics(date));
+    }
+
+    /**
+     * 营业额统计(按列格式), 各项数据为数组, 日期用开始日期和天数偏移表示
+     * @param begin
+     * @param end
+     * @param response
+     */
+    @GetMapping("/v2/turnoverStatistics")
+    @ApiOperation("营业额统计(按列格式)")
+    public void turnOverStatisticsV2(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                     @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+                                     HttpServletResponse response) throws IOException {
+        log.info("营业额数据统计(v2):{},{}", begin, end);
+        reportService.writeTurnoverStatisticsV2(begin, end, response);
+    }
+
+    /**
+     * 用户统计(按列格式)
+     * @param begin
+     * @param end
+     * @param response
+     */
+    @GetMapping("/v2/userStatistics")
+    @ApiOperation("用户统计(按列格式)")
+    public void userStatisticsV2(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                 @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+                                 HttpServletResponse response) throws IOException {
+        log.info("用户数据统计(v2):{},{}", begin, end);
+        reportService.writeUserStatisticsV2(begin, end, response);
+    }
+
+    /**
+     * 订单统计(按列格式)
+     * @param begin
+     * @param end
+     * @param response
+     */
+    @GetMapping("/v2/ordersStatistics")
+    @ApiOperation("订单统计(按列格式)")
+    public void ordersStatisticsV2(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                   @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+                                   HttpServletResponse response) throws IOException {
+        log.info("订单数据统计(v2):{},{}", begin, end);
+        reportService.writeOrderStatisticsV2(begin, end, response);
+    }
+
+    /**
+     * 销量排名top10(按列格式)
+     * @param begin
+     * @param end
+     * @param response
+     */
+    @GetMapping("/v2/top10")
+    @ApiOperation("销量排名top10(按列格式)")
+    public void top10V2(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                        @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+                        HttpServletResponse response) throws IOException {
+        log.info("销量排名top10(v2):{},{}", begin, end);
+        reportService.writeSalesTop10V2(begin, end, response);
+    }
+
     /**
      * 导出运营数据报表
-     * 通过传入HttpServletResponse对象获取输出流
+     * 通过传入HttpServletResponse对象获取输出流, 不传日期时导出最近30天
+     * @param begin
+     * @param end
      * @param response
      */
     @GetMapping("/export")
     @ApiOperation("导出运营数据报表")
-    public void export(HttpServletResponse response){
-        reportService.exportBusinessData(response);
+    public void export(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                       @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+                       HttpServletResponse response) throws IOException {
+        log.info("导出运营数据报表:{},{}", begin, end);
+        reportService.exportBusinessData(begin, end, response);
+    }
+
+    /**
+     * 提交运营数据报表异步导出任务, 相同日期区间的任务正在执行时返回该任务
+     * @param begin
+     * @param end
+     * @return
+     */
+    @PostMapping("/export/jobs")
+    @ApiOperation("提交运营数据报表导出任务")
+    public Result<ReportExportJobVO> submitExportJob(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                                     @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        log.info("提交运营数据报表导出任务:{},{}", begin, end);
+        return Result.success(reportService.submitExportJob(begin, end));
+    }
+
+    /**
+     * 查询导出任务的状态和进度
+     * @param jobId
+     * @return
+     */
+    @GetMapping("/export/jobs/{jobId}")
+    @ApiOperation("查询运营数据报表导出任务")
+    public Result<ReportExportJobVO> getExportJob(@PathVariable String jobId) {
+        return Result.success(reportService.getExportJob(jobId));
+    }
+
+    /**
+     * 下载导出任务生成的文件
+     * @param jobId
+     * @param response
+     */
+    @GetMapping("/export/jobs/{jobId}/file")
+    @ApiOperation("下载运营数据报表导出文件")
+    public void downloadExportJob(@PathVariable String jobId, HttpServletResponse response) throws IOException {
+        reportService.downloadExportJob(jobId, response);
     }
 }
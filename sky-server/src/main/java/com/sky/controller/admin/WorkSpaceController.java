@@ -6,6 +6,7 @@ import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import com.sky.vo.TodayDashboardVO;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
@@ -73,4 +74,14 @@ public class WorkSpaceController {
     public Result<SetmealOverViewVO> setmealOverView(){
         return Result.success(workspaceService.getSetmealOverView());
     }
+
+    /**
+     * 工作台今日实时数据查询, 商家端打开页面时查询一次, 之后由WebSocket推送变化后的数据
+     * @return
+     */
+    @GetMapping("/today")
+    @ApiOperation("工作台今日实时数据查询")
+    public Result<TodayDashboardVO> today(){
+        return Result.success(workspaceService.getTodayDashboard());
+    }
 }
@@ -5,7 +5,8 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.sky.properties.WeChatProperties;
 import com.sky.service.OrderService;
-import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.MerchantNotification;
+import com.sky.websocket.MerchantNotificationBus;
 import com.wechat.pay.contrib.apache.httpclient.util.AesUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.entity.ContentType;
@@ -54,25 +55,15 @@ public class PayNotifyController {
         log.info("商户平台订单号：{}", outTradeNo);
         log.info("微信支付交易号：{}", transactionId);
 
-        //业务处理，修改订单状态、来单提醒
+        //业务处理，修改订单状态、来单提醒(来单提醒由paySuccess发布, 这里不再重复推送)
         orderService.paySuccess(outTradeNo);
 
-        //目标：使用websocket推送消息给商家端浏览器
-        //存储发送消息对象
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("type",1);//1代表是来单提醒，2客户催单
-        map.put("orderId",1);
-        map.put("content","订单号："+outTradeNo);
-
-        //使用websocket发送json数据给前端
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
-
         //给微信响应
         responseToWeixin(response);
     }
 
     @Autowired
-    private WebSocketServer webSocketServer;
+    private MerchantNotificationBus merchantNotificationBus;
 
     /**
      * 目标：模拟支付成功后调用这个接口，使用websocket给商家端客户端发送消息
@@ -83,14 +74,8 @@ public class PayNotifyController {
     @GetMapping("/sendOrderMsg")
     public void sendOrderMsg(Long orderId,String outTradeNo){
 
-        //存储发送消息对象
-        HashMap<String, Object> map = new HashMap<>();
-        map.put("type",1);//1代表是来单提醒，2客户催单
-        map.put("orderId",orderId);
-        map.put("content","订单号："+outTradeNo);
-
-        //使用websocket发送json数据给前端
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        //通过消息总线异步推送给商家端浏览器
+        merchantNotificationBus.publish(MerchantNotification.newOrder(orderId, outTradeNo));
     }
 
     /**
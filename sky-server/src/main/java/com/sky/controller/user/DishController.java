@@ -1,5 +1,10 @@
 package com.sky.controller.user;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.sky.cache.DishCacheNamespace;
+import com.sky.cache.MenuSnapshot;
+import com.sky.cache.NearCacheManager;
+import com.sky.cache.SingleFlight;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Dish;
 import com.sky.result.Result;
@@ -14,6 +19,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
 
 @RestController("userDishController")
@@ -27,34 +35,69 @@ public class DishController {
     @Autowired
     private RedisTemplate redisTemplate;
 
+    @Autowired
+    private DishCacheNamespace dishCacheNamespace;
+
+    @Autowired
+    private NearCacheManager nearCacheManager;
+
+    @Autowired
+    private SingleFlight singleFlight;
+
     /**
      * 根据分类id查询菜品
+     * 返回的数据格式为Result<List<DishVO>>, 本地缓存中保存的是序列化好的响应数据快照, 命中时直接写入响应。
+     * 未命中时先在本地缓存中放入加载标记, 再读取版本号加载数据, 最后只有标记仍在时才替换为快照:
+     * 清理缓存时先增加版本号再清理本地缓存(标记随之被清理), 所以加载期间发生的清理不会被旧数据覆盖, 之前发生的清理已经体现在读取到的版本号中
      *
      * @param categoryId
-     * @return
+     * @param request
+     * @param response
+     * @throws IOException
      */
     @GetMapping("/list")
-    @ApiOperation("根据分类id查询菜品")
-    public Result<List<DishVO>> list(Long categoryId) {
-        //构造redis中的key, 其中key的构造规则是: dish_不同的分类id
-        String key = "dish_" + categoryId;
+    @ApiOperation(value = "根据分类id查询菜品", response = DishVO.class, responseContainer = "List")
+    public void list(Long categoryId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        //先查询本地缓存, 命中时不需要访问redis, 也不需要再序列化
+        Cache<Object, Object> localCache = nearCacheManager.getCache(DishCacheNamespace.LOCAL_CACHE_NAME);
+        String localKey = String.valueOf(categoryId);
+        Object cached = localCache.getIfPresent(localKey);
+        if (cached instanceof MenuSnapshot) {
+            ((MenuSnapshot) cached).writeTo(request, response);
+            return;
+        }
 
-        //查询redis中是否存在菜品数据
-        List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
-        if (list != null && list.size() > 0) {
-            //如果存在直接返回,无需查询数据库
-            return Result.success(list);
+        //其他请求正在加载时共用它放入的标记, 标记仍在说明之后没有发生过清理
+        Object marker = new Object();
+        Object existing = localCache.asMap().putIfAbsent(localKey, marker);
+        if (existing != null && !(existing instanceof MenuSnapshot)) {
+            marker = existing;
         }
 
-        Dish dish = new Dish();
-        dish.setCategoryId(categoryId);
-        dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
+        //构造redis中的key, 其中key的构造规则是: dish_不同的分类id_v全局版本号.分类版本号
+        String key = dishCacheNamespace.currentKey(categoryId);
 
-        //如果不存在, 则查询数据库, 并将查询到的数据存入redis中
-        list = dishService.listWithFlavor(dish);
-        redisTemplate.opsForValue().set(key, list);
+        //查询redis中是否存在菜品数据, 如果存在无需查询数据库; 没有菜品的分类缓存的是空列表, 同样视为命中
+        List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
+        if (list == null) {
+            //如果不存在, 则查询数据库, 并将查询到的数据存入redis中; 同一个key并发的请求只查询一次数据库
+            list = singleFlight.load(DishCacheNamespace.LOCAL_CACHE_NAME, key,
+                    () -> (List<DishVO>) redisTemplate.opsForValue().get(key),
+                    () -> {
+                        Dish dish = new Dish();
+                        dish.setCategoryId(categoryId);
+                        dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
+
+                        List<DishVO> dishList = dishService.listWithFlavor(dish);
+                        redisTemplate.opsForValue().set(key, dishList, DishCacheNamespace.TTL);
+                        return dishList;
+                    });
+        }
 
-        return Result.success(list);
+        //序列化一次后放入本地缓存, 之后的请求直接写入这些字节; 加载期间缓存已被清理(标记不在)时不放入
+        MenuSnapshot snapshot = MenuSnapshot.of(Result.success(list));
+        localCache.asMap().replace(localKey, marker, snapshot);
+        snapshot.writeTo(request, response);
     }
 
 }
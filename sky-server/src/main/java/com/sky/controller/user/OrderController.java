@@ -1,6 +1,7 @@
 package com.sky.controller.user;
 
 import com.sky.dto.OrdersSubmitDTO;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
@@ -50,6 +51,23 @@ public class OrderController {
         return Result.success(pageResult);
     }
 
+    /**
+     * 历史订单游标分页查询
+     *
+     * @param cursor    上一页返回的游标, 查询第一页时不传
+     * @param pageSize  每页记录数
+     * @param status    订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+     * @param withTotal 是否需要统计总记录数
+     * @return
+     */
+    @GetMapping("/historyOrders/cursor")
+    @ApiOperation("历史订单游标分页查询")
+    public Result<CursorPageResult> cursorPage(String cursor, int pageSize, Integer status,
+                                               @RequestParam(defaultValue = "false") boolean withTotal) {
+        CursorPageResult cursorPageResult = orderService.cursorQuery4User(cursor, pageSize, status, withTotal);
+        return Result.success(cursorPageResult);
+    }
+
     /**
      * 查询订单详情
      *
@@ -30,7 +30,8 @@ public class SetmealController {
      * @return
      */
     //添加缓存, 在redis只能的存储格式为 key: setmealCache::xxx value在实质上是list方法中return的返回结果, 注意在放入缓存数据时候的key的名称需要和取出缓存数据的名称一致(放入的时候在用户端,取出的时候在管理端)
-    @Cacheable(value = "setmealCache", key = "#categoryId")
+    //sync = true: 缓存未命中时并发的请求合并为一次查询
+    @Cacheable(value = "setmealCache", key = "#categoryId", sync = true)
     @GetMapping("/list")
     @ApiOperation("根据分类id查询套餐")
     public Result<List<Setmeal>> list(Long categoryId) {
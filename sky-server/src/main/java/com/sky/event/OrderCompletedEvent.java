@@ -0,0 +1,25 @@
+package com.sky.event;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * 订单完成事件
+ * 单个订单变为"已完成"并且事务提交后发布, 携带完整的订单数据和订单明细, 供销量排行等需要商品数据的统计直接使用
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class OrderCompletedEvent {
+
+    //订单数据
+    private final Orders orders;
+
+    //订单明细
+    private final List<OrderDetail> orderDetailList;
+}
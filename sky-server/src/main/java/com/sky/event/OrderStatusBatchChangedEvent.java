@@ -0,0 +1,24 @@
+package com.sky.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 订单状态批量变更事件
+ * 定时任务通过一条update语句批量修改一批订单的状态后发布, 只携带数量不携带订单id, 监听器收到后需要与数据库重新对账
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class OrderStatusBatchChangedEvent {
+
+    //变更前的状态
+    private final Integer fromStatus;
+
+    //变更后的状态
+    private final Integer toStatus;
+
+    //本次修改的订单数量
+    private final int count;
+}
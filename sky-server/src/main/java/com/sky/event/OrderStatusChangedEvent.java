@@ -0,0 +1,33 @@
+package com.sky.event;
+
+import com.sky.entity.Orders;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 订单状态变更事件
+ * 每次订单状态发生变化(下单、支付、接单、派送、完成、取消、拒单)后发布, 由各个监听器在事务提交后更新计数器等内存数据
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class OrderStatusChangedEvent {
+
+    //订单id
+    private final Long orderId;
+
+    //变更前的状态, 新下单时为null
+    private final Integer fromStatus;
+
+    //变更后的状态
+    private final Integer toStatus;
+
+    //订单数据快照, 只有发布方手中有完整订单数据时(下单, 或状态转换前已经查询过订单)才会携带, 其余情况为null;
+    //状态转换时为转换前查询到的数据, 其中的状态是转换前的状态, 监听器只应读取下单时间、金额等不会变化的字段
+    private final Orders orders;
+
+    public OrderStatusChangedEvent(Long orderId, Integer fromStatus, Integer toStatus) {
+        this(orderId, fromStatus, toStatus, null);
+    }
+}
@@ -0,0 +1,22 @@
+package com.sky.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * 新用户注册事件
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class UserRegisteredEvent {
+
+    //用户id
+    private final Long userId;
+
+    //注册时间
+    private final LocalDateTime createTime;
+}
@@ -0,0 +1,48 @@
+package com.sky.mapper;
+
+import com.sky.entity.DailyBusinessStats;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Mapper
+public interface DailyBusinessStatsMapper {
+
+    /**
+     * 查询日期区间内的汇总数据
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select * from daily_business_stats where date >= #{begin} and date <= #{end} order by date")
+    List<DailyBusinessStats> getByDateRange(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 查询日期区间内已有汇总数据的日期
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select date from daily_business_stats where date >= #{begin} and date <= #{end} order by date")
+    List<LocalDate> getDatesBetween(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 累加某一天的汇总数据, 当天没有记录时插入
+     * 用户总数(totalUsers)不使用增量, 插入时查询user表计算, 之后随新增用户数累加
+     *
+     * @param delta 各字段的增量
+     */
+    void increment(DailyBusinessStats delta);
+
+    /**
+     * 批量覆盖多天的汇总数据, 没有记录时插入
+     *
+     * @param statsList
+     */
+    void upsertBatch(@Param("statsList") List<DailyBusinessStats> statsList);
+}
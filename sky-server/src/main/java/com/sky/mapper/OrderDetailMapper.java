@@ -23,4 +23,11 @@ public interface OrderDetailMapper {
      */
     @Select("select * from order_detail where order_id = #{orderId}")
     List<OrderDetail> getByOrderId(Long orderId);
+
+    /**
+     * 根据多个订单id批量查询订单明细, 用于订单列表页一次性加载当前页所有订单的明细
+     * @param orderIds
+     * @return
+     */
+    List<OrderDetail> getByOrderIds(@Param("orderIds") List<Long> orderIds);
 }
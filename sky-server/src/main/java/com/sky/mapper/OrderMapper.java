@@ -1,13 +1,18 @@
 package com.sky.mapper;
 
 import com.github.pagehelper.Page;
-import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.DailyGoodsSalesDTO;
+import com.sky.dto.DailyOrderStatsDTO;
+import com.sky.dto.HourlyGoodsSalesDTO;
+import com.sky.dto.IntradayOrderStatsDTO;
+import com.sky.dto.OrderStatusCountDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
 import org.apache.ibatis.annotations.*;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +42,15 @@ public interface OrderMapper {
      */
     void update(Orders orders);
 
+    /**
+     * 带状态条件的修改订单信息, 只有订单当前状态在fromStatuses中时才会修改
+     *
+     * @param orders       需要修改的字段, 其中id和status(目标状态)必须设置
+     * @param fromStatuses 允许修改的当前状态
+     * @return 受影响的行数, 为0表示订单不存在或状态已经被修改
+     */
+    int transit(@Param("orders") Orders orders, @Param("fromStatuses") Collection<Integer> fromStatuses);
+
     /**
      * 根据订单id查询订单对象
      *
@@ -70,6 +84,40 @@ public interface OrderMapper {
     @Select("select count(id) from orders where status = #{status}")
     Integer countStatus(@Param("status") Integer status);
 
+    /**
+     * 按订单状态分组统计订单数量, 一次扫描得到所有状态的数量分布
+     *
+     * @param begin 下单时间的起始时间, 为null时统计全部订单
+     * @return
+     */
+    List<OrderStatusCountDTO> countGroupByStatus(@Param("begin") LocalDateTime begin);
+
+    /**
+     * 按下单日期和订单状态分组统计时间区间内的订单数量
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<OrderStatusCountDTO> countGroupByDateAndStatus(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 查询最早的下单时间
+     *
+     * @return
+     */
+    @Select("select min(order_time) from orders")
+    LocalDateTime getMinOrderTime();
+
+    /**
+     * 查询指定时间之后下单的最小订单id
+     *
+     * @param begin
+     * @return
+     */
+    @Select("select min(id) from orders where order_time >= #{begin}")
+    Long getMinIdByOrderTime(@Param("begin") LocalDateTime begin);
+
     /**
      * 根据订单状态和下单时间查询订单
      *
@@ -80,6 +128,62 @@ public interface OrderMapper {
     @Select("select * from orders where  status=#{status} and order_time<#{orderTime}")
     List<Orders> getByStatusAndOrderTimeLT(@Param("status") Integer status, @Param("orderTime") LocalDateTime orderTime);
 
+    /**
+     * 根据订单状态查询订单的id和下单时间
+     *
+     * @param status
+     * @return
+     */
+    @Select("select id, order_time from orders where status = #{status}")
+    List<Orders> getByStatus(@Param("status") Integer status);
+
+    /**
+     * 按id顺序查询一批订单的订单号和手机号, 用于建立订单搜索索引
+     *
+     * @param lastId 只查询id大于该值的订单
+     * @param limit  查询的数量
+     * @return
+     */
+    @Select("select id, number, phone from orders where id > #{lastId} order by id limit #{limit}")
+    List<Orders> getSearchFieldsAfterId(@Param("lastId") Long lastId, @Param("limit") int limit);
+
+    /**
+     * 按id倒序跳过offset条订单后的订单id, 用于确定订单搜索索引保留的最小id
+     *
+     * @param offset
+     * @return 订单数量不超过offset时返回null
+     */
+    @Select("select id from orders order by id desc limit #{offset}, 1")
+    Long getIdFromLatest(@Param("offset") int offset);
+
+    /**
+     * 按id顺序查询一批满足状态和下单时间条件的订单中最后一条的id, 用于划定批量修改的id区间
+     *
+     * @param status
+     * @param orderTime
+     * @param lastId    上一批的最大id, 只查询id大于该值的订单
+     * @param offset    本批最后一条订单的偏移量, 即每批的数量减1
+     * @return 本批最后一条订单的id, 剩余订单不足一批时返回null
+     */
+    @Select("select id from orders where status = #{status} and order_time < #{orderTime} and id > #{lastId} order by id limit #{offset}, 1")
+    Long getChunkEndId(@Param("status") Integer status, @Param("orderTime") LocalDateTime orderTime,
+                       @Param("lastId") Long lastId, @Param("offset") int offset);
+
+    /**
+     * 批量修改一批订单的状态, 只修改id在(lastId, endId]区间内、状态为fromStatus并且下单时间早于orderTime的订单
+     *
+     * @param orders     需要修改的字段, 其中status(目标状态)必须设置
+     * @param fromStatus 当前状态
+     * @param orderTime  下单时间上限
+     * @param lastId     上一批的最大id
+     * @param endId      本批的最大id, 为null时表示不限制
+     * @param limit      本批最多修改的数量
+     * @return 受影响的行数
+     */
+    int transitBatch(@Param("orders") Orders orders, @Param("fromStatus") Integer fromStatus,
+                     @Param("orderTime") LocalDateTime orderTime, @Param("lastId") Long lastId,
+                     @Param("endId") Long endId, @Param("limit") int limit);
+
     /**
      * 分页条件查询并按下单时间排序
      *
@@ -87,6 +191,28 @@ public interface OrderMapper {
      */
     Page<Orders> pageQuery(@Param("ordersPageQueryDTO") OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 游标分页条件查询, 按下单时间和id倒序, 只查询位于游标(cursorTime, cursorId)之后的订单
+     *
+     * @param ordersPageQueryDTO
+     * @param cursorTime         上一页最后一条订单的下单时间, 查询第一页时为null
+     * @param cursorId           上一页最后一条订单的id, 查询第一页时为null
+     * @param limit              查询的数量
+     * @return
+     */
+    List<Orders> cursorQuery(@Param("ordersPageQueryDTO") OrdersPageQueryDTO ordersPageQueryDTO,
+                             @Param("cursorTime") LocalDateTime cursorTime,
+                             @Param("cursorId") Long cursorId,
+                             @Param("limit") int limit);
+
+    /**
+     * 根据分页查询条件统计订单数量
+     *
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    Long countByCondition(@Param("ordersPageQueryDTO") OrdersPageQueryDTO ordersPageQueryDTO);
+
     /**
      * 根据动态条件统计营业额数据
      * @param map
@@ -102,10 +228,46 @@ public interface OrderMapper {
     Integer countByMap(Map map);
 
     /**
-     * 统计指定时间间隔内的销量排名top10
+     * 按日期分组统计时间区间内每天的订单总数、有效订单数和营业额
+     *
+     * @param begin
+     * @param end
+     * @param validStatus 有效订单的状态
+     * @return
+     */
+    List<DailyOrderStatsDTO> sumGroupByDate(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end,
+                                            @Param("validStatus") Integer validStatus);
+
+    /**
+     * 按下单时间所在的整点和商品名称分组统计时间区间[begin, end)内已完成订单的销量
+     *
+     * @param begin
+     * @param end    为null时统计begin之后的全部订单
+     * @param status 订单状态
+     * @return
+     */
+    List<HourlyGoodsSalesDTO> sumSalesGroupByHour(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end,
+                                                  @Param("status") Integer status);
+
+    /**
+     * 按下单日期和商品名称分组统计时间区间内已完成订单的销量
+     *
+     * @param begin
+     * @param end
+     * @param status 订单状态
+     * @return
+     */
+    List<DailyGoodsSalesDTO> sumSalesGroupByDate(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end,
+                                                 @Param("status") Integer status);
+
+    /**
+     * 按下单日期和时段(每15分钟一个)分组统计时间区间内的订单总数、有效订单数和营业额
+     *
      * @param begin
      * @param end
+     * @param validStatus 有效订单的状态
      * @return
      */
-    List<GoodsSalesDTO> getSalesTop10(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
-}
\ No newline at end of file
+    List<IntradayOrderStatsDTO> sumGroupByDateAndSlot(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end,
+                                                      @Param("validStatus") Integer validStatus);
+}
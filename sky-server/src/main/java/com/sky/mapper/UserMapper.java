@@ -1,10 +1,14 @@
 package com.sky.mapper;
 
+import com.sky.dto.DailyUserCountDTO;
 import com.sky.entity.User;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Mapper
@@ -33,4 +37,12 @@ public interface UserMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 按日期分组统计时间区间内每天的新增用户数量
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyUserCountDTO> countGroupByDate(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
 }
@@ -0,0 +1,54 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.event.OrderCompletedEvent;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+
+/**
+ * 订单完成事件的发布
+ * 订单状态变更事件只携带订单id, 订单变为"已完成"后在这里统一查询一次订单和订单明细, 再发布携带完整数据的订单完成事件,
+ * 各个统计监听器不需要分别查询数据库
+ */
+@Component
+@Slf4j
+public class OrderCompletionPublisher {
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderDetailMapper orderDetailMapper;
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * 订单完成后查询订单数据并发布订单完成事件, 有事务时在事务提交后执行
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent event) {
+        if (!Orders.COMPLETED.equals(event.getToStatus())) {
+            return;
+        }
+        try {
+            Orders orders = orderMapper.getById(event.getOrderId());
+            if (orders == null) {
+                return;
+            }
+            List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(event.getOrderId());
+            applicationEventPublisher.publishEvent(new OrderCompletedEvent(orders, orderDetailList));
+        } catch (Exception e) {
+            log.error("订单完成事件发布失败:{}", event, e);
+        }
+    }
+}
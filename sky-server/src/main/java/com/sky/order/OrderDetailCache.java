@@ -0,0 +1,104 @@
+package com.sky.order;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusBatchChangedEvent;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.vo.OrderVO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * 订单详情本地缓存
+ * 已完成和已取消的订单不会再发生变化, 放入按数量淘汰的缓存中长期保存;
+ * 其他状态的订单只缓存很短的时间, 用户在等待配送时反复打开订单页面也不会每次都查询数据库;
+ * 订单状态变更后(事务提交后)移除对应的缓存, 命中率等统计数据通过 /actuator/metrics/cache.gets 等指标查看
+ */
+@Component
+public class OrderDetailCache {
+
+    //已完成、已取消订单的最大缓存数量
+    private static final long TERMINAL_MAXIMUM_SIZE = 10000;
+    //进行中订单的最大缓存数量和缓存时间
+    private static final long IN_FLIGHT_MAXIMUM_SIZE = 10000;
+    private static final Duration IN_FLIGHT_TTL = Duration.ofSeconds(10);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Cache<Long, OrderVO> terminalCache = Caffeine.newBuilder()
+            .maximumSize(TERMINAL_MAXIMUM_SIZE)
+            .recordStats()
+            .build();
+
+    private final Cache<Long, OrderVO> inFlightCache = Caffeine.newBuilder()
+            .maximumSize(IN_FLIGHT_MAXIMUM_SIZE)
+            .expireAfterWrite(IN_FLIGHT_TTL)
+            .recordStats()
+            .build();
+
+    @PostConstruct
+    public void bindMetrics() {
+        CaffeineCacheMetrics.monitor(meterRegistry, terminalCache, "orderDetailTerminal");
+        CaffeineCacheMetrics.monitor(meterRegistry, inFlightCache, "orderDetailInFlight");
+    }
+
+    /**
+     * 获取订单详情, 缓存中没有时调用loader查询并根据订单状态放入对应的缓存
+     *
+     * @param id
+     * @param loader 查询订单详情
+     * @return
+     */
+    public OrderVO get(Long id, Function<Long, OrderVO> loader) {
+        OrderVO orderVO = terminalCache.getIfPresent(id);
+        if (orderVO != null) {
+            return orderVO;
+        }
+        orderVO = inFlightCache.getIfPresent(id);
+        if (orderVO != null) {
+            return orderVO;
+        }
+
+        orderVO = loader.apply(id);
+        if (isTerminal(orderVO.getStatus())) {
+            terminalCache.put(id, orderVO);
+        } else {
+            inFlightCache.put(id, orderVO);
+        }
+        return orderVO;
+    }
+
+    /**
+     * 订单状态变更后移除缓存, 有事务时在事务提交后执行
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent event) {
+        inFlightCache.invalidate(event.getOrderId());
+        terminalCache.invalidate(event.getOrderId());
+    }
+
+    /**
+     * 批量修改订单状态时无法得知具体的订单, 清空进行中订单的缓存
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusBatchChanged(OrderStatusBatchChangedEvent event) {
+        inFlightCache.invalidateAll();
+    }
+
+    private boolean isTerminal(Integer status) {
+        return Orders.COMPLETED.equals(status) || Orders.CANCELLED.equals(status);
+    }
+}
@@ -0,0 +1,122 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 订单支付超时调度器
+ * 下单成功后在时间轮中登记一个15分钟后到期的任务, 支付成功或订单被取消时撤销该任务, 到期时通过状态机把仍然是待付款的订单修改为已取消
+ * 项目启动时根据数据库中所有待付款的订单重建时间轮; 多个节点同时登记同一订单时由状态机的条件修改保证只会取消一次
+ */
+@Component
+@Slf4j
+public class OrderPaymentTimeoutScheduler {
+
+    //支付超时时间(分钟)
+    public static final long PAYMENT_TIMEOUT_MINUTES = 15;
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    //第一层每格1秒, 每层60格: 第一层1分钟, 第二层1小时
+    private final TimingWheel timingWheel = new TimingWheel("order-payment-timeout", 1000, 60, 2);
+
+    //key: 订单id value: 时间轮中的任务
+    private final Map<Long, TimingWheel.Timeout> timeouts = new ConcurrentHashMap<>();
+
+    /**
+     * 项目启动完成后根据所有待付款的订单重建时间轮, 已经超时的订单会立即被取消
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<Orders> ordersList = orderMapper.getByStatus(Orders.PENDING_PAYMENT);
+        for (Orders orders : ordersList) {
+            register(orders.getId(), orders.getOrderTime());
+        }
+        log.info("订单支付超时时间轮重建完成, 待付款订单数量:{}", ordersList.size());
+    }
+
+    /**
+     * 订单状态变更后登记或撤销支付超时任务, 有事务时在事务提交后执行
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent event) {
+        if (event.getFromStatus() == null && Orders.PENDING_PAYMENT.equals(event.getToStatus())) {
+            //新下单
+            Orders orders = event.getOrders();
+            register(event.getOrderId(), orders == null ? null : orders.getOrderTime());
+        } else if (Orders.PENDING_PAYMENT.equals(event.getFromStatus())) {
+            //已支付或已取消, 不再需要超时取消
+            TimingWheel.Timeout timeout = timeouts.remove(event.getOrderId());
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * 当前等待支付的订单数量
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return timingWheel.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timingWheel.shutdown();
+    }
+
+    private void register(Long orderId, LocalDateTime orderTime) {
+        LocalDateTime deadline = (orderTime == null ? LocalDateTime.now() : orderTime).plusMinutes(PAYMENT_TIMEOUT_MINUTES);
+        long deadlineMs = deadline.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        TimingWheel.Timeout timeout = timingWheel.schedule(deadlineMs, () -> expire(orderId));
+        TimingWheel.Timeout previous = timeouts.put(orderId, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * 支付超时, 取消订单
+     *
+     * @param orderId
+     */
+    private void expire(Long orderId) {
+        timeouts.remove(orderId);
+        try {
+            Orders orders = Orders.builder()
+                    .id(orderId)
+                    .status(Orders.CANCELLED)
+                    .cancelReason("订单超时自动取消")
+                    .cancelTime(LocalDateTime.now())
+                    .build();
+            //只有仍然是待付款的订单才会被取消
+            if (orderStateMachine.transit(orders, Orders.PENDING_PAYMENT)) {
+                log.info("订单{}支付超时, 已自动取消", orderId);
+            }
+        } catch (Exception e) {
+            log.error("订单{}超时取消失败, 将由定时任务兜底处理", orderId, e);
+        }
+    }
+}
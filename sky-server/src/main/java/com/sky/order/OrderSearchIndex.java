@@ -0,0 +1,340 @@
+package com.sky.order;
+
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.mapper.OrderMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 订单号和手机号的n-gram倒排索引
+ * 把订单号和手机号拆分为所有长度为GRAM_LENGTH的连续子串, 每个子串对应一个有序的订单id列表; 搜索时取关键字所有子串的订单id列表求交集,
+ * 得到可能匹配的候选订单id, 再交给数据库用 id in (...) 过滤, 原有的like条件仍然保留用来做最终校验,
+ * 避免前置通配符的like对orders表做全表扫描
+ * <p>
+ * 索引在项目启动时按id顺序分批从数据库加载, 下单后增量添加, 并定时补齐其他节点新增的订单;
+ * 索引只保证id不大于indexedMaxId的订单全部已经建立索引, 之后的订单由数据库按主键范围扫描补充。
+ * 订单号(雪花算法生成, 前缀相同)和手机号都是纯数字, 长度为3的子串最多只有1000种, 每个子串对应的订单过多, 所以子串长度取4;
+ * 不使用索引而退回like查询的次数通过 order.search.fallback 指标查看(reason: not_ready/short_keyword/too_many_candidates)
+ * <p>
+ * 内存占用: 19位订单号和11位手机号每笔订单共24个子串, 每个子串在列表中占一个long, 加上列表扩容的余量每笔订单约200~300字节。
+ * 索引只保留id最大的MAX_INDEXED_ORDERS笔订单(每个节点约40~60MB), 超出后移除最早的订单,
+ * 移出索引的旧订单(id小于indexedMinId)由数据库使用like查询补充
+ */
+@Component
+@Slf4j
+public class OrderSearchIndex {
+
+    //子串长度, 手机尾号(4位)也可以使用索引
+    private static final int GRAM_LENGTH = 4;
+    //每批从数据库加载的订单数量
+    private static final int LOAD_BATCH_SIZE = 5000;
+    //候选订单数量超过该值时不再使用索引, 直接使用like查询, 避免生成过长的in条件
+    private static final int MAX_CANDIDATES = 2000;
+    //索引保留的订单数量上限
+    private static final int MAX_INDEXED_ORDERS = 200000;
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //key: 子串编码 value: 包含该子串的订单id(升序)
+    private final Map<Long, Postings> numberIndex = new HashMap<>();
+    private final Map<Long, Postings> phoneIndex = new HashMap<>();
+    //索引中的全部订单id, 用于确定超出上限时移除哪些订单
+    private final Postings indexedIds = new Postings();
+
+    //索引保留的订单数量上限, 单元测试中调小
+    int maxIndexedOrders = MAX_INDEXED_ORDERS;
+
+    //id不大于该值的订单全部已经建立索引
+    private volatile long indexedMaxId;
+    //id小于该值的订单已经移出索引(或启动时没有加载), 为0表示没有
+    private volatile long indexedMinId;
+    //首次加载完成之前不使用索引
+    private volatile boolean ready;
+
+    /**
+     * 项目启动完成后加载最近的订单
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        long start = System.currentTimeMillis();
+        Long minId = orderMapper.getIdFromLatest(maxIndexedOrders - 1);
+        if (minId != null) {
+            indexedMinId = minId;
+            indexedMaxId = minId - 1;
+        }
+        int count = catchUp();
+        ready = true;
+        log.info("订单搜索索引加载完成, 订单数量:{}, 子串数量:{}, 耗时:{}ms",
+                count, numberIndex.size() + phoneIndex.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 定时补齐索引中缺少的订单(其他节点新增的订单), 每分钟执行一次
+     *
+     * @return 本次加载的订单数量
+     */
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    public synchronized int catchUp() {
+        int count = 0;
+        long lastId = indexedMaxId;
+        while (true) {
+            List<Orders> ordersList = orderMapper.getSearchFieldsAfterId(lastId, LOAD_BATCH_SIZE);
+            if (ordersList.isEmpty()) {
+                break;
+            }
+            for (Orders orders : ordersList) {
+                add(orders.getId(), orders.getNumber(), orders.getPhone());
+            }
+            count += ordersList.size();
+            lastId = ordersList.get(ordersList.size() - 1).getId();
+            indexedMaxId = lastId;
+            if (ordersList.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 下单成功后把新订单加入索引, 有事务时在事务提交后执行
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent event) {
+        Orders orders = event.getOrders();
+        if (event.getFromStatus() == null && orders != null) {
+            add(event.getOrderId(), orders.getNumber(), orders.getPhone());
+        }
+    }
+
+    /**
+     * 根据查询条件中的订单号和手机号关键字计算候选订单id, 结果写入ordersPageQueryDTO的candidateIds和indexedMaxId,
+     * 无法使用索引时(关键字长度小于GRAM_LENGTH、索引尚未加载、候选订单过多)不修改查询条件, 由like查询处理
+     *
+     * @param ordersPageQueryDTO
+     */
+    public void resolve(OrdersPageQueryDTO ordersPageQueryDTO) {
+        //候选订单只能由服务端计算
+        ordersPageQueryDTO.setCandidateIds(null);
+        ordersPageQueryDTO.setIndexedMaxId(null);
+
+        String number = ordersPageQueryDTO.getNumber();
+        String phone = ordersPageQueryDTO.getPhone();
+        if (StringUtils.isEmpty(number) && StringUtils.isEmpty(phone)) {
+            return;
+        }
+        if (!ready) {
+            fallback("not_ready");
+            return;
+        }
+        boolean useNumber = number != null && number.length() >= GRAM_LENGTH;
+        boolean usePhone = phone != null && phone.length() >= GRAM_LENGTH;
+        if (!useNumber && !usePhone) {
+            fallback("short_keyword");
+            return;
+        }
+
+        //先记录索引范围, 再读取索引, 保证范围内的订单都已经在索引中
+        long maxId = indexedMaxId;
+        long minId;
+        long[] candidates;
+        lock.readLock().lock();
+        try {
+            minId = indexedMinId;
+            candidates = useNumber ? search(numberIndex, number) : null;
+            if (usePhone) {
+                long[] phoneCandidates = search(phoneIndex, phone);
+                candidates = candidates == null ? phoneCandidates : intersect(candidates, phoneCandidates, phoneCandidates.length);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (candidates.length > MAX_CANDIDATES) {
+            fallback("too_many_candidates");
+            return;
+        }
+        List<Long> candidateIds = new ArrayList<>(candidates.length);
+        for (long id : candidates) {
+            candidateIds.add(id);
+        }
+        ordersPageQueryDTO.setCandidateIds(candidateIds);
+        ordersPageQueryDTO.setIndexedMaxId(maxId);
+        ordersPageQueryDTO.setIndexedMinId(minId > 0 ? minId : null);
+    }
+
+    private void fallback(String reason) {
+        meterRegistry.counter("order.search.fallback", "reason", reason).increment();
+    }
+
+    private void add(Long orderId, String number, String phone) {
+        if (orderId == null) {
+            return;
+        }
+        long id = orderId;
+        lock.writeLock().lock();
+        try {
+            if (id < indexedMinId) {
+                return;
+            }
+            addGrams(numberIndex, number, id);
+            addGrams(phoneIndex, phone, id);
+            indexedIds.add(id);
+            //超出上限10%时一次移除, 避免每次添加都移除
+            if (indexedIds.size > maxIndexedOrders + maxIndexedOrders / 10) {
+                trim();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除最早的订单, 只保留id最大的maxIndexedOrders笔订单, 调用方持有写锁
+     */
+    private void trim() {
+        long minId = indexedIds.ids[indexedIds.size - maxIndexedOrders];
+        trim(numberIndex, minId);
+        trim(phoneIndex, minId);
+        indexedIds.removeBefore(minId);
+        indexedMinId = minId;
+        log.info("订单搜索索引超出上限, 移除id小于{}的订单", minId);
+    }
+
+    private void trim(Map<Long, Postings> index, long minId) {
+        index.values().removeIf(postings -> {
+            postings.removeBefore(minId);
+            return postings.size == 0;
+        });
+    }
+
+    private void addGrams(Map<Long, Postings> index, String value, long id) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            index.computeIfAbsent(gram(value, i), key -> new Postings()).add(id);
+        }
+    }
+
+    /**
+     * 查询包含keyword所有子串的订单id, 从最短的列表开始求交集
+     *
+     * @param index
+     * @param keyword
+     * @return
+     */
+    private long[] search(Map<Long, Postings> index, String keyword) {
+        List<Postings> postingsList = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= keyword.length(); i++) {
+            Postings postings = index.get(gram(keyword, i));
+            if (postings == null) {
+                return new long[0];
+            }
+            postingsList.add(postings);
+        }
+        postingsList.sort(Comparator.comparingInt(postings -> postings.size));
+
+        Postings first = postingsList.get(0);
+        long[] result = Arrays.copyOf(first.ids, first.size);
+        for (int i = 1; i < postingsList.size() && result.length > 0; i++) {
+            Postings postings = postingsList.get(i);
+            result = intersect(result, postings.ids, postings.size);
+        }
+        return result;
+    }
+
+    private long[] intersect(long[] a, long[] b, int bSize) {
+        long[] result = new long[Math.min(a.length, bSize)];
+        int size = 0;
+        for (long id : a) {
+            if (Arrays.binarySearch(b, 0, bSize, id) >= 0) {
+                result[size++] = id;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * 子串编码, 每个字符占16位, 4个字符正好放入一个long
+     *
+     * @param value
+     * @param offset
+     * @return
+     */
+    private long gram(String value, int offset) {
+        return ((long) value.charAt(offset) << 48) | ((long) value.charAt(offset + 1) << 32)
+                | ((long) value.charAt(offset + 2) << 16) | value.charAt(offset + 3);
+    }
+
+    /**
+     * 一个子串对应的订单id列表, 保持升序且不重复
+     */
+    private static class Postings {
+        private long[] ids = new long[4];
+        private int size;
+
+        private void add(long id) {
+            //订单id基本是递增的, 绝大多数情况直接追加到末尾
+            if (size == 0 || id > ids[size - 1]) {
+                ensureCapacity();
+                ids[size++] = id;
+                return;
+            }
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            ensureCapacity();
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+        }
+
+        /**
+         * 移除小于minId的订单id
+         *
+         * @param minId
+         */
+        private void removeBefore(long minId) {
+            int index = Arrays.binarySearch(ids, 0, size, minId);
+            int start = index >= 0 ? index : -index - 1;
+            if (start == 0) {
+                return;
+            }
+            int newSize = size - start;
+            ids = Arrays.copyOfRange(ids, start, start + Math.max(newSize, 4));
+            size = newSize;
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+        }
+    }
+}
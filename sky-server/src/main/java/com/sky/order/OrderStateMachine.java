@@ -0,0 +1,180 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusBatchChangedEvent;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 订单状态机
+ * 集中维护订单状态之间允许的转换关系, 每次状态转换都通过一条带条件的update语句完成:
+ * update orders set status = ?, ... where id = ? and status in (...)
+ * 根据受影响的行数判断本次转换是否成功, 省去了先查询再修改的一次数据库访问, 同时避免了两个操作并发修改同一订单时后者覆盖前者的问题
+ */
+@Component
+@Slf4j
+public class OrderStateMachine {
+
+    /**
+     * 状态转换表 key: 当前状态 value: 允许转换到的目标状态
+     * 订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+     */
+    private static final Map<Integer, Set<Integer>> TRANSITIONS;
+
+    static {
+        Map<Integer, Set<Integer>> transitions = new LinkedHashMap<>();
+        transitions.put(Orders.PENDING_PAYMENT, statuses(Orders.TO_BE_CONFIRMED, Orders.CANCELLED));
+        transitions.put(Orders.TO_BE_CONFIRMED, statuses(Orders.CONFIRMED, Orders.CANCELLED));
+        transitions.put(Orders.CONFIRMED, statuses(Orders.DELIVERY_IN_PROGRESS, Orders.CANCELLED));
+        transitions.put(Orders.DELIVERY_IN_PROGRESS, statuses(Orders.COMPLETED, Orders.CANCELLED));
+        transitions.put(Orders.COMPLETED, statuses());
+        transitions.put(Orders.CANCELLED, statuses());
+        TRANSITIONS = Collections.unmodifiableMap(transitions);
+    }
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * 获取完整的状态转换表
+     *
+     * @return key: 当前状态 value: 允许转换到的目标状态
+     */
+    public Map<Integer, Set<Integer>> getTransitions() {
+        return TRANSITIONS;
+    }
+
+    /**
+     * 判断是否允许从fromStatus转换到toStatus
+     *
+     * @param fromStatus
+     * @param toStatus
+     * @return
+     */
+    public boolean canTransit(Integer fromStatus, Integer toStatus) {
+        Set<Integer> targets = TRANSITIONS.get(fromStatus);
+        return targets != null && targets.contains(toStatus);
+    }
+
+    /**
+     * 获取能够转换到目标状态的所有状态
+     *
+     * @param toStatus
+     * @return
+     */
+    public Set<Integer> getSourceStatuses(Integer toStatus) {
+        Set<Integer> sources = new LinkedHashSet<>();
+        TRANSITIONS.forEach((from, targets) -> {
+            if (targets.contains(toStatus)) {
+                sources.add(from);
+            }
+        });
+        return sources;
+    }
+
+    /**
+     * 执行状态转换, 目标状态只能由唯一的状态转换而来时使用(支付、接单、派送、完成)
+     *
+     * @param orders 需要修改的字段, 其中id和status(目标状态)必须设置
+     * @return 转换成功返回true, 订单不存在或当前状态不允许转换返回false
+     */
+    public boolean transit(Orders orders) {
+        Set<Integer> sources = getSourceStatuses(orders.getStatus());
+        if (sources.size() != 1) {
+            throw new IllegalArgumentException("目标状态" + orders.getStatus() + "有多个来源状态, 需要指定当前状态");
+        }
+        return transit(orders, sources.iterator().next());
+    }
+
+    /**
+     * 执行状态转换, 只有订单当前状态仍为fromStatus时才会修改成功
+     *
+     * @param orders     需要修改的字段, 其中id和status(目标状态)必须设置
+     * @param fromStatus 期望的当前状态
+     * @return 转换成功返回true, 订单不存在、状态已被其他操作修改或转换不合法返回false
+     */
+    public boolean transit(Orders orders, Integer fromStatus) {
+        return transit(orders, fromStatus, null);
+    }
+
+    /**
+     * 执行状态转换, 调用方已经查询过订单时使用, 查询到的订单作为快照随状态变更事件发布, 监听器不需要再次查询
+     *
+     * @param orders  需要修改的字段, 其中id和status(目标状态)必须设置
+     * @param current 查询到的订单, 只有订单当前状态仍为其中的状态时才会修改成功
+     * @return 转换成功返回true, 订单不存在、状态已被其他操作修改或转换不合法返回false
+     */
+    public boolean transit(Orders orders, Orders current) {
+        return transit(orders, current.getStatus(), current);
+    }
+
+    private boolean transit(Orders orders, Integer fromStatus, Orders snapshot) {
+        if (!canTransit(fromStatus, orders.getStatus())) {
+            log.warn("订单{}不允许从状态{}转换到状态{}", orders.getId(), fromStatus, orders.getStatus());
+            return false;
+        }
+
+        int rows = orderMapper.transit(orders, Collections.singletonList(fromStatus));
+        if (rows == 0) {
+            log.info("订单{}从状态{}转换到状态{}失败, 订单不存在或状态已变更", orders.getId(), fromStatus, orders.getStatus());
+            return false;
+        }
+
+        applicationEventPublisher.publishEvent(new OrderStatusChangedEvent(orders.getId(), fromStatus, orders.getStatus(), snapshot));
+        return true;
+    }
+
+    /**
+     * 批量状态转换, 按id顺序每次修改一批订单, 直到没有满足条件的订单或者超出时间预算, 剩余的订单留到下一次处理
+     * 每一批都是一条独立提交的update语句, 不会长时间锁住大量数据
+     *
+     * @param orders           需要修改的字段, 其中status(目标状态)必须设置
+     * @param fromStatus       当前状态
+     * @param orderTime        只修改下单时间早于该时间的订单
+     * @param chunkSize        每批修改的数量
+     * @param timeBudgetMillis 本次最多执行的时间(毫秒)
+     * @return 修改的订单数量
+     */
+    public int transitBatch(Orders orders, Integer fromStatus, LocalDateTime orderTime, int chunkSize, long timeBudgetMillis) {
+        if (!canTransit(fromStatus, orders.getStatus())) {
+            throw new IllegalArgumentException("不允许从状态" + fromStatus + "批量转换到状态" + orders.getStatus());
+        }
+
+        long deadline = System.currentTimeMillis() + timeBudgetMillis;
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            //本批最后一条订单的id, 为null表示剩余订单不足一批, 这是最后一批
+            Long endId = orderMapper.getChunkEndId(fromStatus, orderTime, lastId, chunkSize - 1);
+            total += orderMapper.transitBatch(orders, fromStatus, orderTime, lastId, endId, chunkSize);
+            if (endId == null || System.currentTimeMillis() >= deadline) {
+                break;
+            }
+            lastId = endId;
+        }
+
+        if (total > 0) {
+            applicationEventPublisher.publishEvent(new OrderStatusBatchChangedEvent(fromStatus, orders.getStatus(), total));
+        }
+        return total;
+    }
+
+    private static Set<Integer> statuses(Integer... statuses) {
+        Set<Integer> set = new LinkedHashSet<>();
+        Collections.addAll(set, statuses);
+        return Collections.unmodifiableSet(set);
+    }
+}
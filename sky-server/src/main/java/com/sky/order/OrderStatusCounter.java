@@ -0,0 +1,260 @@
+package com.sky.order;
+
+import com.sky.dto.OrderStatusCountDTO;
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusBatchChangedEvent;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.mapper.OrderMapper;
+import com.sky.redis.RedisLock;
+import com.sky.redis.VersionedHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单状态计数器
+ * 全部订单以及今日订单在各个状态下的数量保存在redis的hash中(field为状态值), 每次订单状态变更时由处理该订单的节点增量更新,
+ * 多个sky-server节点读取的是同一份计数; 每5分钟由其中一个节点与数据库对账一次。
+ * 增量更新会增加hash中的版本号, 对账在分布式锁内执行, 版本号在查询数据库期间没有变化时才覆盖计数(见VersionedHash)。
+ * 商家工作台和订单管理页面的统计数据直接从这里读取, 不再查询数据库
+ */
+@Component
+@Slf4j
+public class OrderStatusCounter {
+
+    //状态值直接作为数组下标, 订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+    private static final int STATUS_SIZE = Orders.CANCELLED + 1;
+
+    private static final String TOTAL_KEY = "order:status:count:total";
+    //今日订单计数 key: order:status:count:{日期}
+    private static final String TODAY_KEY_PREFIX = "order:status:count:";
+    //今日计数中今日第一笔订单的id, 订单id自增, 大于等于该值的订单都是今日下的单
+    private static final String FIRST_ORDER_ID_FIELD = "firstOrderId";
+    //今日计数已经与数据库对账过的标记, 没有该标记时(跨天后或redis数据丢失)读取前先对账
+    private static final String RECONCILED_FIELD = "reconciled";
+    //今日计数的过期时间
+    private static final Duration TODAY_TTL = Duration.ofDays(2);
+
+    //对账锁, 同一时间只有一个节点对账
+    private static final String RECONCILE_LOCK_KEY = "lock:reconcile:order:status";
+    private static final Duration RECONCILE_LOCK_TTL = Duration.ofSeconds(30);
+    //定时对账的标记, 每个周期只有设置成功的节点执行定时对账
+    private static final String SCHEDULED_RECONCILE_KEY = "reconcile:order:status:scheduled";
+    private static final Duration SCHEDULED_RECONCILE_INTERVAL = Duration.ofMinutes(5);
+    //查询数据库期间计数发生变化时的重试次数
+    private static final int RECONCILE_ATTEMPTS = 3;
+
+    //在一个脚本中更新全部订单和今日订单的计数, ARGV: 订单id 原状态 新状态(没有时为空字符串) 是否为新订单 过期时间(秒)
+    private static final DefaultRedisScript<Long> APPLY_SCRIPT = new DefaultRedisScript<>(
+            "local first = redis.call('hget', KEYS[2], '" + FIRST_ORDER_ID_FIELD + "') "
+                    + "if ARGV[4] == '1' and ((not first) or tonumber(ARGV[1]) < tonumber(first)) then "
+                    + "redis.call('hset', KEYS[2], '" + FIRST_ORDER_ID_FIELD + "', ARGV[1]) first = ARGV[1] end "
+                    + "if ARGV[2] ~= '' then redis.call('hincrby', KEYS[1], ARGV[2], -1) end "
+                    + "if ARGV[3] ~= '' then redis.call('hincrby', KEYS[1], ARGV[3], 1) end "
+                    + "redis.call('hincrby', KEYS[1], '" + VersionedHash.VERSION_FIELD + "', 1) "
+                    + "if first and tonumber(ARGV[1]) >= tonumber(first) then "
+                    + "if ARGV[2] ~= '' then redis.call('hincrby', KEYS[2], ARGV[2], -1) end "
+                    + "if ARGV[3] ~= '' then redis.call('hincrby', KEYS[2], ARGV[3], 1) end end "
+                    + "redis.call('hincrby', KEYS[2], '" + VersionedHash.VERSION_FIELD + "', 1) "
+                    + "redis.call('expire', KEYS[2], ARGV[5]) "
+                    + "return 1",
+            Long.class);
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private VersionedHash versionedHash;
+    @Autowired
+    private RedisLock redisLock;
+
+    /**
+     * 项目启动完成后从数据库加载一次各状态的订单数量
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        reconcile();
+    }
+
+    /**
+     * 定时与数据库对账, 修正并发更新或事务回滚带来的偏差, 每5分钟由其中一个节点执行一次
+     */
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    public void scheduledReconcile() {
+        Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(SCHEDULED_RECONCILE_KEY, "1", SCHEDULED_RECONCILE_INTERVAL);
+        if (Boolean.TRUE.equals(first)) {
+            reconcile();
+        }
+    }
+
+    /**
+     * 与数据库对账, 其他节点正在对账时直接返回
+     */
+    public void reconcile() {
+        String token = redisLock.tryLock(RECONCILE_LOCK_KEY, RECONCILE_LOCK_TTL);
+        if (token == null) {
+            return;
+        }
+        try {
+            for (int attempt = 1; attempt <= RECONCILE_ATTEMPTS; attempt++) {
+                if (reconcileOnce()) {
+                    return;
+                }
+            }
+            log.warn("订单状态计数器对账期间计数持续变化, 等待下次对账");
+        } finally {
+            redisLock.unlock(RECONCILE_LOCK_KEY, token);
+        }
+    }
+
+    /**
+     * 先读取版本号再查询数据库, 两个hash分别在版本号没有变化时覆盖
+     *
+     * @return 两个hash是否都已覆盖
+     */
+    private boolean reconcileOnce() {
+        LocalDate today = LocalDate.now();
+        LocalDateTime begin = LocalDateTime.of(today, LocalTime.MIN);
+        String todayKey = TODAY_KEY_PREFIX + today;
+        String totalVersion = versionedHash.getVersion(TOTAL_KEY);
+        String todayVersion = versionedHash.getVersion(todayKey);
+
+        //一次group by status查询得到完整的状态分布
+        List<OrderStatusCountDTO> totalList = orderMapper.countGroupByStatus(null);
+        List<OrderStatusCountDTO> todayList = orderMapper.countGroupByStatus(begin);
+        Long todayFirstOrderId = orderMapper.getMinIdByOrderTime(begin);
+
+        Map<String, String> todayFields = toFields(todayList);
+        todayFields.put(RECONCILED_FIELD, "1");
+        if (todayFirstOrderId != null) {
+            todayFields.put(FIRST_ORDER_ID_FIELD, String.valueOf(todayFirstOrderId));
+        }
+        boolean totalReplaced = versionedHash.replaceIfVersion(TOTAL_KEY, totalVersion, toFields(totalList), null);
+        boolean todayReplaced = versionedHash.replaceIfVersion(todayKey, todayVersion, todayFields, TODAY_TTL);
+        log.info("订单状态计数器对账完成, 全部订单:{}{}, 今日订单:{}{}", totalList, totalReplaced ? "" : "(计数已变化, 未覆盖)",
+                todayList, todayReplaced ? "" : "(计数已变化, 未覆盖)");
+        return totalReplaced && todayReplaced;
+    }
+
+    /**
+     * 订单状态变更后增量更新计数, 有事务时在事务提交后执行, 没有事务时立即执行
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent event) {
+        Long orderId = event.getOrderId();
+        if (orderId == null) {
+            return;
+        }
+        stringRedisTemplate.execute(APPLY_SCRIPT,
+                Arrays.asList(TOTAL_KEY, TODAY_KEY_PREFIX + LocalDate.now()),
+                String.valueOf(orderId),
+                toField(event.getFromStatus()),
+                toField(event.getToStatus()),
+                event.getFromStatus() == null ? "1" : "0",
+                String.valueOf(TODAY_TTL.getSeconds()));
+    }
+
+    /**
+     * 定时任务批量修改订单状态后无法得知每个订单的id, 直接与数据库重新对账
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusBatchChanged(OrderStatusBatchChangedEvent event) {
+        reconcile();
+    }
+
+    /**
+     * 全部订单在各个状态下的数量, redis中没有计数时先与数据库对账
+     *
+     * @return 下标为订单状态
+     */
+    public long[] getTotalCounts() {
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(TOTAL_KEY);
+        if (fields.isEmpty()) {
+            reconcile();
+            fields = stringRedisTemplate.opsForHash().entries(TOTAL_KEY);
+        }
+        return toCounts(fields);
+    }
+
+    /**
+     * 今日订单在各个状态下的数量, 今日计数尚未对账时先与数据库对账
+     *
+     * @return 下标为订单状态
+     */
+    public long[] getTodayCounts() {
+        String todayKey = TODAY_KEY_PREFIX + LocalDate.now();
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(todayKey);
+        if (!fields.containsKey(RECONCILED_FIELD)) {
+            reconcile();
+            fields = stringRedisTemplate.opsForHash().entries(todayKey);
+        }
+        return toCounts(fields);
+    }
+
+    /**
+     * 各状态数量之和
+     *
+     * @param counts
+     * @return
+     */
+    public static int sum(long[] counts) {
+        long sum = 0;
+        for (long count : counts) {
+            sum += count;
+        }
+        return (int) sum;
+    }
+
+    private String toField(Integer status) {
+        return status != null && status > 0 && status < STATUS_SIZE ? String.valueOf(status) : "";
+    }
+
+    /**
+     * 数据库的统计结果转换为hash的field, 没有订单的状态也写入0, 覆盖原有的计数
+     *
+     * @param list
+     * @return
+     */
+    private Map<String, String> toFields(List<OrderStatusCountDTO> list) {
+        Map<String, String> fields = new HashMap<>();
+        for (int status = 1; status < STATUS_SIZE; status++) {
+            fields.put(String.valueOf(status), "0");
+        }
+        for (OrderStatusCountDTO dto : list) {
+            String field = toField(dto.getStatus());
+            if (!field.isEmpty()) {
+                fields.put(field, String.valueOf(dto.getCount()));
+            }
+        }
+        return fields;
+    }
+
+    private long[] toCounts(Map<Object, Object> fields) {
+        long[] counts = new long[STATUS_SIZE];
+        for (int status = 1; status < STATUS_SIZE; status++) {
+            Object value = fields.get(String.valueOf(status));
+            counts[status] = value == null ? 0 : Long.parseLong((String) value);
+        }
+        return counts;
+    }
+}
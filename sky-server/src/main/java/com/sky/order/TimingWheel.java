@@ -0,0 +1,328 @@
+package com.sky.order;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮定时器
+ * 第一层时间轮每格tickMs毫秒, 共wheelSize格; 超出当前层范围的任务放入上一层时间轮(每格的跨度是下一层的总跨度), 上一层的格子到期后再把其中的任务降级放回下一层
+ * 添加和取消任务都只是对某个格子中的双向链表做一次插入或删除, 时间复杂度O(1); 只有格子(而不是每个任务)会放入DelayQueue, 由驱动线程等待最近一个到期的格子
+ * 到期的任务交给单独的线程池执行, 不会阻塞时间轮的推进
+ */
+@Slf4j
+public class TimingWheel {
+
+    private final DelayQueue<Bucket> queue = new DelayQueue<>();
+
+    //添加任务时使用读锁, 推进时间轮时使用写锁
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //当前等待中的任务数量
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Wheel wheel;
+    private final ExecutorService taskExecutor;
+    private final Thread driver;
+    private volatile boolean running = true;
+
+    /**
+     * @param name            线程名称前缀
+     * @param tickMs          第一层时间轮每一格的时间跨度(毫秒)
+     * @param wheelSize       每一层时间轮的格子数量
+     * @param executorThreads 执行到期任务的线程数量
+     */
+    public TimingWheel(String name, long tickMs, int wheelSize, int executorThreads) {
+        this.wheel = new Wheel(tickMs, wheelSize, System.currentTimeMillis());
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.taskExecutor = Executors.newFixedThreadPool(executorThreads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-executor-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.driver = new Thread(this::run, name + "-driver");
+        this.driver.setDaemon(true);
+        this.driver.start();
+    }
+
+    /**
+     * 添加一个在指定时间点执行的任务, 时间点已经过去时立即执行
+     *
+     * @param deadlineMs 执行时间(毫秒时间戳)
+     * @param task
+     * @return 任务句柄, 可以用来取消任务
+     */
+    public Timeout schedule(long deadlineMs, Runnable task) {
+        Timeout timeout = new Timeout(deadlineMs, task);
+        lock.readLock().lock();
+        try {
+            addOrRun(timeout);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return timeout;
+    }
+
+    /**
+     * 当前等待中的任务数量
+     *
+     * @return
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 停止时间轮, 未到期的任务不再执行
+     */
+    public void shutdown() {
+        running = false;
+        driver.interrupt();
+        taskExecutor.shutdown();
+    }
+
+    private void addOrRun(Timeout timeout) {
+        if (!wheel.add(timeout) && !timeout.isCancelled()) {
+            //已经到期, 交给线程池执行
+            taskExecutor.execute(timeout.task);
+        }
+    }
+
+    /**
+     * 驱动线程: 等待最近到期的格子, 推进时间轮, 并把格子中的任务重新放入时间轮(降级到下一层或者直接执行)
+     */
+    private void run() {
+        while (running) {
+            try {
+                Bucket bucket = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (bucket == null) {
+                    continue;
+                }
+
+                lock.writeLock().lock();
+                try {
+                    while (bucket != null) {
+                        wheel.advanceClock(bucket.getExpiration());
+                        bucket.flush(this::addOrRun);
+                        bucket = queue.poll();
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("时间轮推进异常", e);
+            }
+        }
+    }
+
+    /**
+     * 任务句柄, 同时也是格子中双向链表的节点
+     */
+    public class Timeout {
+        private final long deadlineMs;
+        private final Runnable task;
+        private volatile boolean cancelled;
+
+        //所在的格子以及链表中的前后节点, 由格子加锁维护
+        private volatile Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(long deadlineMs, Runnable task) {
+            this.deadlineMs = deadlineMs;
+            this.task = task;
+        }
+
+        public long getDeadlineMs() {
+            return deadlineMs;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 取消任务, 从所在的格子中移除
+         */
+        public void cancel() {
+            cancelled = true;
+            remove();
+        }
+
+        private void remove() {
+            //任务可能正在被驱动线程移动到别的格子, 循环直到确实移除
+            Bucket current = bucket;
+            while (current != null) {
+                current.remove(this);
+                current = bucket;
+            }
+        }
+    }
+
+    /**
+     * 一层时间轮
+     */
+    private class Wheel {
+        private final long tickMs;
+        private final int wheelSize;
+        private final long interval;
+        private final Bucket[] buckets;
+
+        //当前时间, 是tickMs的整数倍
+        private volatile long currentTime;
+        private volatile Wheel overflowWheel;
+
+        private Wheel(long tickMs, int wheelSize, long startMs) {
+            this.tickMs = tickMs;
+            this.wheelSize = wheelSize;
+            this.interval = tickMs * wheelSize;
+            this.currentTime = startMs - (startMs % tickMs);
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+
+        /**
+         * 添加任务
+         *
+         * @param timeout
+         * @return 添加成功返回true, 任务已取消或已到期返回false
+         */
+        private boolean add(Timeout timeout) {
+            long deadline = timeout.deadlineMs;
+            if (timeout.isCancelled()) {
+                return false;
+            }
+            if (deadline < currentTime + tickMs) {
+                return false;
+            }
+            if (deadline < currentTime + interval) {
+                long virtualId = deadline / tickMs;
+                Bucket bucket = buckets[(int) (virtualId % wheelSize)];
+                bucket.add(timeout);
+                //格子的到期时间发生变化说明这是格子的一轮新的使用, 需要重新放入延迟队列
+                if (bucket.setExpiration(virtualId * tickMs)) {
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            return overflow().add(timeout);
+        }
+
+        private Wheel overflow() {
+            if (overflowWheel == null) {
+                synchronized (this) {
+                    if (overflowWheel == null) {
+                        overflowWheel = new Wheel(interval, wheelSize, currentTime);
+                    }
+                }
+            }
+            return overflowWheel;
+        }
+
+        private void advanceClock(long timeMs) {
+            if (timeMs >= currentTime + tickMs) {
+                currentTime = timeMs - (timeMs % tickMs);
+                if (overflowWheel != null) {
+                    overflowWheel.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * 时间轮中的一个格子, 保存同一时间段内到期的任务
+     */
+    private class Bucket implements Delayed {
+        //链表的哨兵节点
+        private final Timeout root = new Timeout(-1L, null);
+        private final AtomicLong expiration = new AtomicLong(-1L);
+
+        private Bucket() {
+            root.next = root;
+            root.prev = root;
+        }
+
+        private boolean setExpiration(long expirationMs) {
+            return expiration.getAndSet(expirationMs) != expirationMs;
+        }
+
+        private long getExpiration() {
+            return expiration.get();
+        }
+
+        private void add(Timeout timeout) {
+            boolean done = false;
+            while (!done) {
+                //先从原来的格子中移除
+                timeout.remove();
+                synchronized (this) {
+                    synchronized (timeout) {
+                        if (timeout.bucket == null) {
+                            Timeout tail = root.prev;
+                            timeout.next = root;
+                            timeout.prev = tail;
+                            timeout.bucket = this;
+                            tail.next = timeout;
+                            root.prev = timeout;
+                            size.incrementAndGet();
+                            done = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        private synchronized void remove(Timeout timeout) {
+            synchronized (timeout) {
+                if (timeout.bucket == this) {
+                    timeout.next.prev = timeout.prev;
+                    timeout.prev.next = timeout.next;
+                    timeout.next = null;
+                    timeout.prev = null;
+                    timeout.bucket = null;
+                    size.decrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * 取出格子中的全部任务交给consumer处理, 并重置格子的到期时间
+         *
+         * @param consumer
+         */
+        private synchronized void flush(Consumer<Timeout> consumer) {
+            Timeout head = root.next;
+            while (head != root) {
+                remove(head);
+                consumer.accept(head);
+                head = root.next;
+            }
+            expiration.set(-1L);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getExpiration(), ((Bucket) other).getExpiration());
+        }
+    }
+}
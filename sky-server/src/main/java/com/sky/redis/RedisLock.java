@@ -0,0 +1,82 @@
+package com.sky.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * 基于redis的节点间互斥
+ * 多个sky-server节点部署时, 对账、推送等只需要一个节点执行的任务通过这里协调:
+ * tryLock/unlock 为带过期时间的互斥锁(SET NX PX), 只删除自己持有的锁;
+ * holdLease 为可续期的租约, 持有租约的节点每次调用时续期, 其他节点在租约过期(持有者宕机)后才能获得
+ */
+@Component
+@Slf4j
+public class RedisLock {
+
+    //只删除自己持有的锁
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    //自己持有租约时续期, 没有节点持有时获取, ARGV: 节点标识 过期时间(毫秒)
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT = new DefaultRedisScript<>(
+            "local owner = redis.call('get', KEYS[1]) "
+                    + "if owner == ARGV[1] then redis.call('pexpire', KEYS[1], ARGV[2]) return 1 end "
+                    + "if owner == false then redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end "
+                    + "return 0",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //本节点的标识, 作为租约的持有者
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 尝试获取锁
+     *
+     * @param key
+     * @param ttl 锁的过期时间, 持有者宕机时锁在过期后自动释放
+     * @return 获取成功时返回释放锁使用的令牌, 锁被其他节点持有时返回null
+     */
+    public String tryLock(String key, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(key, token, ttl);
+        return Boolean.TRUE.equals(locked) ? token : null;
+    }
+
+    /**
+     * 释放自己持有的锁
+     *
+     * @param key
+     * @param token
+     */
+    public void unlock(String key, String token) {
+        try {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
+        } catch (Exception e) {
+            //锁会在过期后自动释放
+            log.error("释放锁失败:{}", key, e);
+        }
+    }
+
+    /**
+     * 获取或续期租约
+     *
+     * @param key
+     * @param ttl 租约的过期时间, 应大于调用的间隔
+     * @return 本节点是否持有租约
+     */
+    public boolean holdLease(String key, Duration ttl) {
+        Long held = stringRedisTemplate.execute(LEASE_SCRIPT, Collections.singletonList(key),
+                nodeId, String.valueOf(ttl.toMillis()));
+        return Long.valueOf(1).equals(held);
+    }
+}
@@ -0,0 +1,90 @@
+package com.sky.redis;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带版本号的redis计数hash
+ * 计数由各个节点增量累加(HINCRBY), 同时由定时任务从数据库读取准确值覆盖。每次增量累加都会增加hash中的版本号,
+ * 对账时先读取版本号再查询数据库, 写入时版本号没有变化才覆盖: 查询期间有新的增量时放弃本次覆盖, 避免增量丢失或重复计算
+ */
+@Component
+public class VersionedHash {
+
+    //版本号字段
+    public static final String VERSION_FIELD = "version";
+
+    //ARGV: 字段 增量 过期时间(秒, 0表示不过期)
+    private static final DefaultRedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "local value = redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2]) "
+                    + "redis.call('hincrby', KEYS[1], '" + VERSION_FIELD + "', 1) "
+                    + "if tonumber(ARGV[3]) > 0 then redis.call('expire', KEYS[1], ARGV[3]) end "
+                    + "return value",
+            Long.class);
+
+    //ARGV: 期望的版本号(没有时为空字符串) 过期时间(秒, 0表示不过期) 字段1 值1 字段2 值2 ...
+    private static final DefaultRedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>(
+            "local version = redis.call('hget', KEYS[1], '" + VERSION_FIELD + "') "
+                    + "if (version == false and ARGV[1] ~= '') or (version ~= false and version ~= ARGV[1]) then return 0 end "
+                    + "for i = 3, #ARGV, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+                    + "if tonumber(ARGV[2]) > 0 then redis.call('expire', KEYS[1], ARGV[2]) end "
+                    + "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 增量累加一个字段并增加版本号
+     *
+     * @param key
+     * @param field
+     * @param delta
+     * @param ttl   为null时不设置过期时间
+     * @return 累加后的值
+     */
+    public Long increment(String key, String field, long delta, Duration ttl) {
+        return stringRedisTemplate.execute(INCREMENT_SCRIPT, Collections.singletonList(key),
+                field, String.valueOf(delta), String.valueOf(ttl == null ? 0 : ttl.getSeconds()));
+    }
+
+    /**
+     * 当前的版本号, 在查询数据库之前读取
+     *
+     * @param key
+     * @return hash中没有版本号时返回空字符串
+     */
+    public String getVersion(String key) {
+        Object version = stringRedisTemplate.opsForHash().get(key, VERSION_FIELD);
+        return version == null ? "" : (String) version;
+    }
+
+    /**
+     * 版本号没有变化时写入全部字段
+     *
+     * @param key
+     * @param expectedVersion getVersion读取到的版本号
+     * @param fields
+     * @param ttl             为null时不设置过期时间
+     * @return 是否写入成功
+     */
+    public boolean replaceIfVersion(String key, String expectedVersion, Map<String, String> fields, Duration ttl) {
+        List<String> args = new ArrayList<>(fields.size() * 2 + 2);
+        args.add(expectedVersion);
+        args.add(String.valueOf(ttl == null ? 0 : ttl.getSeconds()));
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            args.add(entry.getKey());
+            args.add(entry.getValue());
+        }
+        Long replaced = stringRedisTemplate.execute(REPLACE_SCRIPT, Collections.singletonList(key), args.toArray());
+        return Long.valueOf(1).equals(replaced);
+    }
+}
@@ -0,0 +1,174 @@
+package com.sky.report;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * 运营数据报表Excel写入
+ * 模板文件只在第一次使用时从classpath读取一次并缓存在内存中; 标题和概览数据写入模板本身, 明细数据通过SXSSF流式写入,
+ * 内存中最多只保留ROW_ACCESS_WINDOW行, 超出的行会写到临时文件, 导出任意长度的时间区间占用的内存都是固定的
+ */
+@Component
+public class BusinessDataExcelWriter {
+
+    private static final String TEMPLATE_PATH = "template/运营数据报表模板.xlsx";
+
+    //SXSSF在内存中保留的行数
+    private static final int ROW_ACCESS_WINDOW = 100;
+
+    //模板中的位置(下标从0开始): 第2行时间, 第4、5行概览数据, 第8行开始是明细数据
+    private static final int TIME_ROW = 1;
+    private static final int OVERVIEW_FIRST_ROW = 3;
+    private static final int OVERVIEW_SECOND_ROW = 4;
+    private static final int DETAIL_FIRST_ROW = 7;
+    //明细数据从第2列开始: 日期 营业额 有效订单 订单完成率 平均客单价 新增用户数
+    private static final int DETAIL_FIRST_COLUMN = 1;
+    private static final int DETAIL_COLUMNS = 6;
+
+    private volatile byte[] template;
+
+    /**
+     * 写入运营数据报表
+     *
+     * @param begin        开始日期
+     * @param end          结束日期
+     * @param statsList    每一天的营业数据, 按日期升序
+     * @param outputStream 写入的目标, 由调用方负责关闭
+     * @throws IOException
+     */
+    public void write(LocalDate begin, LocalDate end, List<BusinessDayStats> statsList, OutputStream outputStream) throws IOException {
+        write(begin, end, statsList, outputStream, rows -> {
+        });
+    }
+
+    /**
+     * 写入运营数据报表, 每写入一行明细数据回调一次rowListener
+     *
+     * @param begin        开始日期
+     * @param end          结束日期
+     * @param statsList    每一天的营业数据, 按日期升序
+     * @param outputStream 写入的目标, 由调用方负责关闭
+     * @param rowListener  参数为已经写入的明细行数
+     * @throws IOException
+     */
+    public void write(LocalDate begin, LocalDate end, List<BusinessDayStats> statsList, OutputStream outputStream,
+                      IntConsumer rowListener) throws IOException {
+        XSSFWorkbook excel = new XSSFWorkbook(new ByteArrayInputStream(getTemplate()));
+        XSSFSheet sheet = excel.getSheetAt(0);
+
+        //填充时间
+        sheet.getRow(TIME_ROW).getCell(1).setCellValue("时间:" + begin + "至" + end);
+
+        //填充概览数据
+        writeOverview(sheet, statsList);
+
+        //记录模板中明细行的单元格样式, 然后删除模板中的示例明细行, SXSSF只能在模板最后一行之后追加新行
+        CellStyle[] detailStyles = new CellStyle[DETAIL_COLUMNS];
+        XSSFRow templateRow = sheet.getRow(DETAIL_FIRST_ROW);
+        for (int i = 0; i < DETAIL_COLUMNS; i++) {
+            detailStyles[i] = templateRow.getCell(DETAIL_FIRST_COLUMN + i).getCellStyle();
+        }
+        float detailHeight = templateRow.getHeightInPoints();
+        for (int i = sheet.getLastRowNum(); i >= DETAIL_FIRST_ROW; i--) {
+            XSSFRow row = sheet.getRow(i);
+            if (row != null) {
+                sheet.removeRow(row);
+            }
+        }
+
+        SXSSFWorkbook streamingExcel = new SXSSFWorkbook(excel, ROW_ACCESS_WINDOW);
+        try {
+            Sheet streamingSheet = streamingExcel.getSheetAt(0);
+            int rowNum = DETAIL_FIRST_ROW;
+            for (BusinessDayStats stats : statsList) {
+                Row row = streamingSheet.createRow(rowNum++);
+                row.setHeightInPoints(detailHeight);
+                setCell(row, 0, detailStyles).setCellValue(stats.getDate().toString());
+                setCell(row, 1, detailStyles).setCellValue(stats.getTurnover());
+                setCell(row, 2, detailStyles).setCellValue(stats.getValidOrderCount());
+                setCell(row, 3, detailStyles).setCellValue(completionRate(stats.getValidOrderCount(), stats.getOrderCount()));
+                setCell(row, 4, detailStyles).setCellValue(unitPrice(stats.getTurnover(), stats.getValidOrderCount()));
+                setCell(row, 5, detailStyles).setCellValue(stats.getNewUsers());
+                rowListener.accept(rowNum - DETAIL_FIRST_ROW);
+            }
+
+            streamingExcel.write(outputStream);
+        } finally {
+            //删除SXSSF写入的临时文件
+            streamingExcel.dispose();
+            streamingExcel.close();
+        }
+    }
+
+    private void writeOverview(XSSFSheet sheet, List<BusinessDayStats> statsList) {
+        double turnover = 0.0;
+        int orderCount = 0;
+        int validOrderCount = 0;
+        int newUsers = 0;
+        for (BusinessDayStats stats : statsList) {
+            turnover += stats.getTurnover();
+            orderCount += stats.getOrderCount();
+            validOrderCount += stats.getValidOrderCount();
+            newUsers += stats.getNewUsers();
+        }
+
+        //营业额 订单完成率 新增用户数
+        XSSFRow row = sheet.getRow(OVERVIEW_FIRST_ROW);
+        row.getCell(2).setCellValue(turnover);
+        row.getCell(4).setCellValue(completionRate(validOrderCount, orderCount));
+        row.getCell(6).setCellValue(newUsers);
+
+        //有效订单 平均客单价
+        row = sheet.getRow(OVERVIEW_SECOND_ROW);
+        row.getCell(2).setCellValue(validOrderCount);
+        row.getCell(4).setCellValue(unitPrice(turnover, validOrderCount));
+    }
+
+    private Cell setCell(Row row, int index, CellStyle[] styles) {
+        Cell cell = row.createCell(DETAIL_FIRST_COLUMN + index);
+        cell.setCellStyle(styles[index]);
+        return cell;
+    }
+
+    private double completionRate(int validOrderCount, int orderCount) {
+        return orderCount == 0 ? 0.0 : (double) validOrderCount / orderCount;
+    }
+
+    private double unitPrice(double turnover, int validOrderCount) {
+        return validOrderCount == 0 ? 0.0 : turnover / validOrderCount;
+    }
+
+    /**
+     * 获取模板文件内容, 第一次调用时从classpath读取
+     *
+     * @return
+     * @throws IOException
+     */
+    private byte[] getTemplate() throws IOException {
+        byte[] bytes = template;
+        if (bytes == null) {
+            try (InputStream inputStream = new ClassPathResource(TEMPLATE_PATH).getInputStream()) {
+                bytes = StreamUtils.copyToByteArray(inputStream);
+            }
+            template = bytes;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,47 @@
+package com.sky.report;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 某一天的营业数据
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BusinessDayStats implements Serializable {
+
+    //日期
+    private LocalDate date;
+
+    //营业额
+    private Double turnover;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数
+    private Integer validOrderCount;
+
+    //新增用户数
+    private Integer newUsers;
+
+    //截止当天的用户总数
+    private Integer totalUsers;
+
+    /**
+     * 没有任何数据的一天
+     *
+     * @param date
+     * @return
+     */
+    public static BusinessDayStats empty(LocalDate date) {
+        return new BusinessDayStats(date, 0.0, 0, 0, 0, 0);
+    }
+}
@@ -0,0 +1,145 @@
+package com.sky.report;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sky.dto.GoodsSalesDTO;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * 按列格式(v2)输出的报表json
+ * 通过JsonGenerator把基本类型数组直接流式写入输出流, 不经过装箱的集合和逗号拼接的字符串, 前端也不需要再拆分字符串;
+ * 外层仍然是统一返回结果的格式: {"code":1,"msg":null,"data":{...}}, data中的字段名与v1保持一致,
+ * 日期列表换成开始日期(beginEpochDay, 距1970-01-01的天数)和每条数据相对开始日期的天数(dayOffsets)
+ */
+@Component
+public class ColumnarReportWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    /**
+     * 营业额统计: beginEpochDay dayOffsets turnoverList
+     *
+     * @param series
+     * @param outputStream
+     * @throws IOException
+     */
+    public void writeTurnover(DailySeries series, OutputStream outputStream) throws IOException {
+        write(outputStream, generator -> {
+            writeDays(generator, series);
+            writeArray(generator, "turnoverList", series.getTurnover());
+        });
+    }
+
+    /**
+     * 用户统计: beginEpochDay dayOffsets newUserList totalUserList
+     *
+     * @param series
+     * @param outputStream
+     * @throws IOException
+     */
+    public void writeUsers(DailySeries series, OutputStream outputStream) throws IOException {
+        write(outputStream, generator -> {
+            writeDays(generator, series);
+            writeArray(generator, "newUserList", series.getNewUsers());
+            writeArray(generator, "totalUserList", series.getTotalUsers());
+        });
+    }
+
+    /**
+     * 订单统计: beginEpochDay dayOffsets orderCountList validOrderCountList totalOrderCount validOrderCount orderCompletionRate
+     *
+     * @param series
+     * @param outputStream
+     * @throws IOException
+     */
+    public void writeOrders(DailySeries series, OutputStream outputStream) throws IOException {
+        int totalOrderCount = 0;
+        int validOrderCount = 0;
+        for (int i = 0; i < series.size(); i++) {
+            totalOrderCount += series.getOrderCount()[i];
+            validOrderCount += series.getValidOrderCount()[i];
+        }
+        double orderCompletionRate = totalOrderCount == 0 ? 0.0 : (double) validOrderCount / totalOrderCount;
+
+        int total = totalOrderCount;
+        int valid = validOrderCount;
+        write(outputStream, generator -> {
+            writeDays(generator, series);
+            writeArray(generator, "orderCountList", series.getOrderCount());
+            writeArray(generator, "validOrderCountList", series.getValidOrderCount());
+            generator.writeNumberField("totalOrderCount", total);
+            generator.writeNumberField("validOrderCount", valid);
+            generator.writeNumberField("orderCompletionRate", orderCompletionRate);
+        });
+    }
+
+    /**
+     * 销量排名: nameList numberList exact
+     *
+     * @param topSales
+     * @param outputStream
+     * @throws IOException
+     */
+    public void writeSalesTop(SalesTopKEngine.TopSales topSales, OutputStream outputStream) throws IOException {
+        List<GoodsSalesDTO> salesList = topSales.getSalesList();
+        write(outputStream, generator -> {
+            generator.writeArrayFieldStart("nameList");
+            for (GoodsSalesDTO sales : salesList) {
+                generator.writeString(sales.getName());
+            }
+            generator.writeEndArray();
+
+            int[] numbers = new int[salesList.size()];
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = salesList.get(i).getNumber();
+            }
+            writeArray(generator, "numberList", numbers);
+            generator.writeBooleanField("exact", topSales.isExact());
+        });
+    }
+
+    /**
+     * 写入统一返回结果的外层结构, data中的字段由dataWriter写入
+     *
+     * @param outputStream
+     * @param dataWriter
+     * @throws IOException
+     */
+    private void write(OutputStream outputStream, DataWriter dataWriter) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("code", 1);
+            generator.writeNullField("msg");
+            generator.writeObjectFieldStart("data");
+            dataWriter.write(generator);
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeDays(JsonGenerator generator, DailySeries series) throws IOException {
+        generator.writeNumberField("beginEpochDay", series.getBeginEpochDay());
+        writeArray(generator, "dayOffsets", series.getDayOffsets());
+    }
+
+    private void writeArray(JsonGenerator generator, String fieldName, int[] values) throws IOException {
+        generator.writeFieldName(fieldName);
+        generator.writeArray(values, 0, values.length);
+    }
+
+    private void writeArray(JsonGenerator generator, String fieldName, double[] values) throws IOException {
+        generator.writeFieldName(fieldName);
+        generator.writeArray(values, 0, values.length);
+    }
+
+    @FunctionalInterface
+    private interface DataWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+}
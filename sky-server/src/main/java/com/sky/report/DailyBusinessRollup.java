@@ -0,0 +1,272 @@
+package com.sky.report;
+
+import com.sky.dto.OrderStatusCountDTO;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.Orders;
+import com.sky.event.OrderCompletedEvent;
+import com.sky.event.OrderStatusBatchChangedEvent;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.event.UserRegisteredEvent;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 每日营业数据汇总表(daily_business_stats)的维护
+ * 订单状态变更和用户注册后按下单日期/注册日期对汇总表做增量累加, 增量累加只使用事件中已有的订单数据, 不再查询数据库:
+ * 订单完成由订单完成事件累加营业额和有效订单数, 其余状态变更只有事件携带订单快照时才累加各状态的订单数量,
+ * 没有快照的状态变更(接单、派送、超时取消)由对账修正。每天凌晨重新计算最近几天的数据覆盖汇总表完成对账,
+ * 项目启动时补齐汇总表中缺少的历史日期并重新计算最近几天(停机期间错过的对账和增量); 汇总表中的数据发生变化后移除对应日期的报表缓存
+ */
+@Component
+@Slf4j
+public class DailyBusinessRollup {
+
+    //每次对账重新计算的天数(不含今天)
+    private static final int RECONCILE_DAYS = 3;
+    //补齐历史数据时每批计算的天数
+    private static final int BACKFILL_BATCH_DAYS = 31;
+
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private ReportEngine reportEngine;
+    @Autowired
+    private ReportDayCache reportDayCache;
+
+    /**
+     * 项目启动完成后补齐汇总表中缺少的日期(从最早的订单到昨天), 停机期间增量更新可能已经插入了个别日期的数据,
+     * 所以逐个日期检查而不是只从最后一天开始补齐; 已有的最近几天可能只有部分增量(停机期间错过了对账), 总是重新计算
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        LocalDateTime minOrderTime = orderMapper.getMinOrderTime();
+        if (minOrderTime == null) {
+            return;
+        }
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate begin = minOrderTime.toLocalDate();
+        if (begin.isAfter(yesterday)) {
+            return;
+        }
+        //最近几天总是重新计算, 之前的日期只补齐缺少的
+        LocalDate reconcileBegin = yesterday.minusDays(RECONCILE_DAYS - 1);
+        if (reconcileBegin.isBefore(begin)) {
+            reconcileBegin = begin;
+        }
+        LocalDate backfillEnd = reconcileBegin.minusDays(1);
+        Set<LocalDate> existingDates = new HashSet<>(dailyBusinessStatsMapper.getDatesBetween(begin, backfillEnd));
+
+        //连续缺少的日期合并为一个区间, 每个区间最多BACKFILL_BATCH_DAYS天
+        LocalDate missingBegin = null;
+        for (LocalDate date = begin; !date.isAfter(reconcileBegin); date = date.plusDays(1)) {
+            boolean missing = !date.isAfter(backfillEnd) && !existingDates.contains(date);
+            if (missing && missingBegin == null) {
+                missingBegin = date;
+            }
+            boolean batchFull = missingBegin != null && date.equals(missingBegin.plusDays(BACKFILL_BATCH_DAYS));
+            if (missingBegin != null && (!missing || batchFull)) {
+                LocalDate end = date.minusDays(1);
+                recompute(missingBegin, end);
+                log.info("每日营业数据汇总补齐: {} 至 {}", missingBegin, end);
+                missingBegin = missing ? date : null;
+            }
+        }
+
+        recompute(reconcileBegin, yesterday);
+        log.info("每日营业数据汇总重新计算: {} 至 {}", reconcileBegin, yesterday);
+    }
+
+    /**
+     * 每天凌晨0点5分重新计算最近几天的汇总数据, 修正增量更新的偏差
+     */
+    @Scheduled(cron = "0 5 0 * * ?")
+    public void reconcile() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        recompute(yesterday.minusDays(RECONCILE_DAYS - 1), yesterday);
+        log.info("每日营业数据汇总对账完成, 截止日期:{}", yesterday);
+    }
+
+    /**
+     * 重新计算日期区间内的汇总数据并覆盖汇总表
+     *
+     * @param begin
+     * @param end
+     */
+    public void recompute(LocalDate begin, LocalDate end) {
+        List<BusinessDayStats> statsList = reportEngine.computeLive(begin, end);
+        if (statsList.isEmpty()) {
+            return;
+        }
+
+        //key: 日期 value: 当天的汇总数据
+        Map<LocalDate, DailyBusinessStats> rollupMap = new HashMap<>();
+        List<DailyBusinessStats> rollupList = new ArrayList<>();
+        for (BusinessDayStats stats : statsList) {
+            DailyBusinessStats rollup = DailyBusinessStats.zero(stats.getDate());
+            rollup.setTurnover(BigDecimal.valueOf(stats.getTurnover()));
+            rollup.setOrderCount(stats.getOrderCount());
+            rollup.setValidOrderCount(stats.getValidOrderCount());
+            rollup.setNewUsers(stats.getNewUsers());
+            rollup.setTotalUsers(stats.getTotalUsers());
+            rollupMap.put(stats.getDate(), rollup);
+            rollupList.add(rollup);
+        }
+
+        List<OrderStatusCountDTO> statusCountList = orderMapper.countGroupByDateAndStatus(
+                LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX));
+        for (OrderStatusCountDTO statusCount : statusCountList) {
+            DailyBusinessStats rollup = rollupMap.get(statusCount.getDate());
+            //已完成订单数量即有效订单数, 已经由上面的统计得到
+            if (rollup != null && !Orders.COMPLETED.equals(statusCount.getStatus())) {
+                addStatusCount(rollup, statusCount.getStatus(), statusCount.getCount());
+            }
+        }
+
+        dailyBusinessStatsMapper.upsertBatch(rollupList);
+        reportDayCache.evict(begin, end);
+    }
+
+    /**
+     * 订单状态变更后累加下单日期当天的汇总数据, 有事务时在事务提交后执行
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent event) {
+        //订单完成由订单完成事件累加; 没有订单快照时无法得知下单日期, 由对账修正
+        Orders orders = event.getOrders();
+        if (Orders.COMPLETED.equals(event.getToStatus()) || orders == null || orders.getOrderTime() == null) {
+            return;
+        }
+        DailyBusinessStats delta = DailyBusinessStats.zero(orders.getOrderTime().toLocalDate());
+        if (event.getFromStatus() == null) {
+            delta.setOrderCount(1);
+        }
+        addStatusCount(delta, event.getFromStatus(), -1);
+        addStatusCount(delta, event.getToStatus(), 1);
+        increment(delta, event);
+    }
+
+    /**
+     * 订单完成后累加下单日期当天的营业额和有效订单数, 订单数据由订单完成事件携带
+     *
+     * @param event
+     */
+    @EventListener
+    public void onOrderCompleted(OrderCompletedEvent event) {
+        Orders orders = event.getOrders();
+        if (orders.getOrderTime() == null) {
+            return;
+        }
+        DailyBusinessStats delta = DailyBusinessStats.zero(orders.getOrderTime().toLocalDate());
+        addStatusCount(delta, Orders.DELIVERY_IN_PROGRESS, -1);
+        addStatusCount(delta, Orders.COMPLETED, 1);
+        if (orders.getAmount() != null) {
+            delta.setTurnover(orders.getAmount());
+        }
+        increment(delta, event);
+    }
+
+    /**
+     * 累加下单日期当天的汇总数据, 下单日期在今天之前时, 该日期的报表缓存已经过期
+     *
+     * @param delta
+     * @param event
+     */
+    private void increment(DailyBusinessStats delta, Object event) {
+        try {
+            dailyBusinessStatsMapper.increment(delta);
+            reportDayCache.evict(delta.getDate(), delta.getDate());
+        } catch (Exception e) {
+            //汇总数据会在对账时修正, 不影响业务操作
+            log.error("每日营业数据汇总增量更新失败:{}", event, e);
+        }
+    }
+
+    /**
+     * 批量修改订单状态时无法得知每个订单的下单日期, 重新计算最近几天(含今天)的汇总数据
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusBatchChanged(OrderStatusBatchChangedEvent event) {
+        try {
+            LocalDate today = LocalDate.now();
+            recompute(today.minusDays(RECONCILE_DAYS - 1), today);
+        } catch (Exception e) {
+            log.error("每日营业数据汇总重新计算失败:{}", event, e);
+        }
+    }
+
+    /**
+     * 新用户注册后累加注册日期当天的新增用户数, 用户总数随之累加
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserRegistered(UserRegisteredEvent event) {
+        try {
+            LocalDateTime createTime = event.getCreateTime() == null ? LocalDateTime.now() : event.getCreateTime();
+            DailyBusinessStats delta = DailyBusinessStats.zero(createTime.toLocalDate());
+            delta.setNewUsers(1);
+            dailyBusinessStatsMapper.increment(delta);
+        } catch (Exception e) {
+            log.error("每日营业数据汇总增量更新失败:{}", event, e);
+        }
+    }
+
+    /**
+     * 累加指定状态的订单数量, 已完成订单计入有效订单数
+     *
+     * @param stats
+     * @param status
+     * @param count
+     */
+    private void addStatusCount(DailyBusinessStats stats, Integer status, int count) {
+        if (status == null) {
+            return;
+        }
+        switch (status) {
+            case 1:
+                stats.setPendingPaymentCount(stats.getPendingPaymentCount() + count);
+                break;
+            case 2:
+                stats.setToBeConfirmedCount(stats.getToBeConfirmedCount() + count);
+                break;
+            case 3:
+                stats.setConfirmedCount(stats.getConfirmedCount() + count);
+                break;
+            case 4:
+                stats.setDeliveryInProgressCount(stats.getDeliveryInProgressCount() + count);
+                break;
+            case 5:
+                stats.setValidOrderCount(stats.getValidOrderCount() + count);
+                break;
+            case 6:
+                stats.setCancelledCount(stats.getCancelledCount() + count);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.sky.report;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 按列存储的每日营业数据
+ * 日期用相对开始日期的天数偏移表示, 每一项数据是一个基本类型数组, 下标与日期偏移一一对应
+ */
+@Getter
+public class DailySeries {
+
+    //开始日期距1970-01-01的天数
+    private final long beginEpochDay;
+
+    //每条数据相对开始日期的天数
+    private final int[] dayOffsets;
+
+    //营业额
+    private final double[] turnover;
+
+    //订单总数
+    private final int[] orderCount;
+
+    //有效订单数
+    private final int[] validOrderCount;
+
+    //新增用户数
+    private final int[] newUsers;
+
+    //截止当天的用户总数
+    private final int[] totalUsers;
+
+    private DailySeries(long beginEpochDay, int size) {
+        this.beginEpochDay = beginEpochDay;
+        this.dayOffsets = new int[size];
+        this.turnover = new double[size];
+        this.orderCount = new int[size];
+        this.validOrderCount = new int[size];
+        this.newUsers = new int[size];
+        this.totalUsers = new int[size];
+    }
+
+    /**
+     * 把按日期升序的每日营业数据转换为按列存储
+     *
+     * @param begin     开始日期
+     * @param statsList
+     * @return
+     */
+    public static DailySeries of(LocalDate begin, List<BusinessDayStats> statsList) {
+        DailySeries series = new DailySeries(begin.toEpochDay(), statsList.size());
+        for (int i = 0; i < statsList.size(); i++) {
+            BusinessDayStats stats = statsList.get(i);
+            series.dayOffsets[i] = (int) (stats.getDate().toEpochDay() - series.beginEpochDay);
+            series.turnover[i] = stats.getTurnover();
+            series.orderCount[i] = stats.getOrderCount();
+            series.validOrderCount[i] = stats.getValidOrderCount();
+            series.newUsers[i] = stats.getNewUsers();
+            series.totalUsers[i] = stats.getTotalUsers();
+        }
+        return series;
+    }
+
+    public int size() {
+        return dayOffsets.length;
+    }
+}
@@ -0,0 +1,380 @@
+package com.sky.report;
+
+import com.sky.dto.IntradayOrderStatsDTO;
+import com.sky.entity.Orders;
+import com.sky.event.OrderCompletedEvent;
+import com.sky.event.OrderStatusBatchChangedEvent;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.mapper.OrderMapper;
+import com.sky.redis.RedisLock;
+import com.sky.redis.VersionedHash;
+import com.sky.vo.IntradayReportVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分时段订单数据存储
+ * 每天按下单时间分为96个时段(每15分钟一个), 统计每个时段的订单数、有效订单数和营业额。
+ * 今天和昨天的数据仍在变化(派送中的订单最晚由定时任务在第二天凌晨完成), 保存在redis的hash中(key: intraday:{日期}),
+ * 由处理下单和订单完成的节点增量累加, 多个sky-server节点读取同一份数据; 由一个节点与数据库对账(项目启动时、每5分钟、
+ * 定时任务批量修改订单状态后, 对账方式见VersionedHash)。
+ * 更早的RETENTION_DAYS - RECENT_DAYS天已经稳定, 每个节点在环形数组中各保存一份, 第 epochDay % RETENTION_DAYS 行存放对应日期的数据:
+ * 项目启动时从数据库加载, 之后每天凌晨把刚刚稳定的一天从redis复制到环形数组中, 不再定时查询数据库。
+ * 只有保留区间之外的日期查询时才扫描orders表
+ */
+@Component
+@Slf4j
+public class IntradaySeriesStore {
+
+    //每个时段的分钟数
+    private static final int SLOT_MINUTES = 15;
+    //每天的时段数量
+    private static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+    //保留的天数(含今天)
+    private static final int RETENTION_DAYS = 14;
+    //保存在redis中的天数(今天和昨天)
+    private static final int RECENT_DAYS = 2;
+
+    //最近的数据 key: intraday:{日期} field: 统计项前缀 + 时段序号
+    private static final String KEY_PREFIX = "intraday:";
+    private static final String ORDER_COUNT_FIELD = "o";
+    private static final String VALID_ORDER_COUNT_FIELD = "v";
+    //营业额, 单位为分
+    private static final String TURNOVER_FIELD = "t";
+    //已经与数据库对账过的标记, 没有该标记时(跨天后或redis数据丢失)读取前先对账
+    private static final String RECONCILED_FIELD = "reconciled";
+    //稳定后还要保留一段时间, 供各节点复制到环形数组中
+    private static final Duration TTL = Duration.ofDays(RECENT_DAYS + 1);
+
+    //对账锁, 同一时间只有一个节点对账
+    private static final String RECONCILE_LOCK_KEY = "lock:reconcile:intraday";
+    private static final Duration RECONCILE_LOCK_TTL = Duration.ofSeconds(30);
+    //定时对账的标记, 每个周期只有设置成功的节点执行定时对账
+    private static final String SCHEDULED_RECONCILE_KEY = "reconcile:intraday:scheduled";
+    private static final Duration SCHEDULED_RECONCILE_INTERVAL = Duration.ofMinutes(5);
+    //查询数据库期间数据发生变化时的重试次数
+    private static final int RECONCILE_ATTEMPTS = 3;
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private VersionedHash versionedHash;
+    @Autowired
+    private RedisLock redisLock;
+
+    //每一行对应的日期(epochDay), -1表示未使用
+    private final long[] rowDays = new long[RETENTION_DAYS];
+    //按 行 * SLOTS_PER_DAY + 时段 存放
+    private final int[] orderCounts = new int[RETENTION_DAYS * SLOTS_PER_DAY];
+    private final int[] validOrderCounts = new int[RETENTION_DAYS * SLOTS_PER_DAY];
+    //营业额, 单位为分
+    private final long[] turnoverCents = new long[RETENTION_DAYS * SLOTS_PER_DAY];
+
+    public IntradaySeriesStore() {
+        Arrays.fill(rowDays, -1);
+    }
+
+    /**
+     * 项目启动完成后从数据库加载已经稳定的日期, 并与redis中最近的数据对账
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        long start = System.currentTimeMillis();
+        LocalDate end = LocalDate.now().minusDays(RECENT_DAYS);
+        LocalDate begin = end.minusDays(RETENTION_DAYS - RECENT_DAYS - 1);
+        List<IntradayOrderStatsDTO> statsList = orderMapper.sumGroupByDateAndSlot(
+                LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX), Orders.COMPLETED);
+
+        //查询期间不持有锁, 查询完成后一次写入
+        synchronized (this) {
+            for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+                row(date.toEpochDay());
+            }
+            for (IntradayOrderStatsDTO stats : statsList) {
+                int index = row(stats.getDate().toEpochDay()) * SLOTS_PER_DAY + stats.getSlot();
+                orderCounts[index] = stats.getOrderCount();
+                validOrderCounts[index] = stats.getValidOrderCount();
+                turnoverCents[index] = toCents(stats.getTurnover());
+            }
+        }
+        log.info("分时段订单数据加载完成, 记录数量:{}, 耗时:{}ms", statsList.size(), System.currentTimeMillis() - start);
+
+        reconcile();
+    }
+
+    /**
+     * 每天凌晨把刚刚稳定的日期从redis复制到环形数组中
+     */
+    @Scheduled(cron = "0 10 0 * * ?")
+    public void settle() {
+        LocalDate date = LocalDate.now().minusDays(RECENT_DAYS);
+        int[] orderCountList = new int[SLOTS_PER_DAY];
+        int[] validOrderCountList = new int[SLOTS_PER_DAY];
+        long[] turnoverCentList = new long[SLOTS_PER_DAY];
+        if (!readRecent(date, orderCountList, validOrderCountList, turnoverCentList)) {
+            log.warn("redis中没有{}的分时段订单数据, 查询时从数据库统计", date);
+            return;
+        }
+
+        synchronized (this) {
+            int offset = row(date.toEpochDay()) * SLOTS_PER_DAY;
+            System.arraycopy(orderCountList, 0, orderCounts, offset, SLOTS_PER_DAY);
+            System.arraycopy(validOrderCountList, 0, validOrderCounts, offset, SLOTS_PER_DAY);
+            System.arraycopy(turnoverCentList, 0, turnoverCents, offset, SLOTS_PER_DAY);
+        }
+    }
+
+    /**
+     * 新下单后累加下单时段的订单数, 有事务时在事务提交后执行
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(OrderStatusChangedEvent event) {
+        Orders orders = event.getOrders();
+        if (event.getFromStatus() != null || orders == null || orders.getOrderTime() == null) {
+            return;
+        }
+        increment(orders.getOrderTime(), ORDER_COUNT_FIELD, 1);
+    }
+
+    /**
+     * 订单完成后累加下单时段的有效订单数和营业额
+     *
+     * @param event
+     */
+    @EventListener
+    public void onOrderCompleted(OrderCompletedEvent event) {
+        Orders orders = event.getOrders();
+        if (orders.getOrderTime() == null) {
+            return;
+        }
+        increment(orders.getOrderTime(), VALID_ORDER_COUNT_FIELD, 1);
+        if (orders.getAmount() != null) {
+            increment(orders.getOrderTime(), TURNOVER_FIELD, orders.getAmount().movePointRight(2).longValue());
+        }
+    }
+
+    /**
+     * 定时任务批量修改订单状态后无法得知每个订单的下单时段, 直接与数据库重新对账
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusBatchChanged(OrderStatusBatchChangedEvent event) {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("分时段订单数据对账失败:{}", event, e);
+        }
+    }
+
+    /**
+     * 定时与数据库对账, 每5分钟由其中一个节点执行一次
+     */
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    public void scheduledReconcile() {
+        Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(SCHEDULED_RECONCILE_KEY, "1", SCHEDULED_RECONCILE_INTERVAL);
+        if (Boolean.TRUE.equals(first)) {
+            reconcile();
+        }
+    }
+
+    /**
+     * 与数据库对账redis中最近的数据, 其他节点正在对账时直接返回
+     */
+    public void reconcile() {
+        String token = redisLock.tryLock(RECONCILE_LOCK_KEY, RECONCILE_LOCK_TTL);
+        if (token == null) {
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            for (LocalDate date = today.minusDays(RECENT_DAYS - 1); !date.isAfter(today); date = date.plusDays(1)) {
+                reconcile(date);
+            }
+        } finally {
+            redisLock.unlock(RECONCILE_LOCK_KEY, token);
+        }
+    }
+
+    private void reconcile(LocalDate date) {
+        for (int attempt = 1; attempt <= RECONCILE_ATTEMPTS; attempt++) {
+            if (reconcileOnce(date)) {
+                return;
+            }
+        }
+        log.warn("{}的分时段订单数据对账期间数据持续变化, 等待下次对账", date);
+    }
+
+    /**
+     * 先读取版本号再查询数据库, 版本号没有变化时覆盖
+     *
+     * @param date
+     * @return 是否已覆盖
+     */
+    private boolean reconcileOnce(LocalDate date) {
+        String key = KEY_PREFIX + date;
+        String version = versionedHash.getVersion(key);
+        List<IntradayOrderStatsDTO> statsList = orderMapper.sumGroupByDateAndSlot(
+                LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX), Orders.COMPLETED);
+        Map<String, String> fields = new HashMap<>();
+        for (IntradayOrderStatsDTO stats : statsList) {
+            fields.put(ORDER_COUNT_FIELD + stats.getSlot(), String.valueOf(stats.getOrderCount()));
+            fields.put(VALID_ORDER_COUNT_FIELD + stats.getSlot(), String.valueOf(stats.getValidOrderCount()));
+            fields.put(TURNOVER_FIELD + stats.getSlot(), String.valueOf(toCents(stats.getTurnover())));
+        }
+        fields.put(RECONCILED_FIELD, "1");
+        return versionedHash.replaceIfVersion(key, version, fields, TTL);
+    }
+
+    /**
+     * 查询某一天分时段的数据, 最近的日期读取redis, 之前已经稳定并且已经加载的日期直接读取内存, 其余日期查询数据库
+     *
+     * @param date
+     * @return
+     */
+    public IntradayReportVO get(LocalDate date) {
+        int[] orderCountList = new int[SLOTS_PER_DAY];
+        int[] validOrderCountList = new int[SLOTS_PER_DAY];
+        long[] turnoverCentList = new long[SLOTS_PER_DAY];
+
+        boolean loaded = isRecent(date)
+                ? readRecent(date, orderCountList, validOrderCountList, turnoverCentList)
+                : copyLoaded(date, orderCountList, validOrderCountList, turnoverCentList);
+        if (!loaded) {
+            List<IntradayOrderStatsDTO> statsList = orderMapper.sumGroupByDateAndSlot(
+                    LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX), Orders.COMPLETED);
+            for (IntradayOrderStatsDTO stats : statsList) {
+                orderCountList[stats.getSlot()] = stats.getOrderCount();
+                validOrderCountList[stats.getSlot()] = stats.getValidOrderCount();
+                turnoverCentList[stats.getSlot()] = toCents(stats.getTurnover());
+            }
+        }
+
+        double[] turnoverList = new double[SLOTS_PER_DAY];
+        for (int i = 0; i < SLOTS_PER_DAY; i++) {
+            turnoverList[i] = turnoverCentList[i] / 100.0;
+        }
+        return IntradayReportVO.builder()
+                .date(date)
+                .slotMinutes(SLOT_MINUTES)
+                .orderCountList(orderCountList)
+                .validOrderCountList(validOrderCountList)
+                .turnoverList(turnoverList)
+                .build();
+    }
+
+    /**
+     * 从redis读取最近某一天的数据, 没有对账标记时先对账
+     *
+     * @param date
+     * @param orderCountList
+     * @param validOrderCountList
+     * @param turnoverCentList
+     * @return redis中没有这一天的数据时返回false
+     */
+    private boolean readRecent(LocalDate date, int[] orderCountList, int[] validOrderCountList, long[] turnoverCentList) {
+        String key = KEY_PREFIX + date;
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(key);
+        if (!fields.containsKey(RECONCILED_FIELD) && isRecent(date)) {
+            //跨天后或redis数据丢失时先与数据库对账
+            reconcile();
+            fields = stringRedisTemplate.opsForHash().entries(key);
+        }
+        if (!fields.containsKey(RECONCILED_FIELD)) {
+            return false;
+        }
+        for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+            orderCountList[slot] = (int) parseLong(fields.get(ORDER_COUNT_FIELD + slot));
+            validOrderCountList[slot] = (int) parseLong(fields.get(VALID_ORDER_COUNT_FIELD + slot));
+            turnoverCentList[slot] = parseLong(fields.get(TURNOVER_FIELD + slot));
+        }
+        return true;
+    }
+
+    /**
+     * 从内存中复制某一天的数据, 跨天后尚未复制(该行存放的不是这一天)时返回false
+     *
+     * @param date
+     * @param orderCountList
+     * @param validOrderCountList
+     * @param turnoverCentList
+     * @return
+     */
+    private synchronized boolean copyLoaded(LocalDate date, int[] orderCountList, int[] validOrderCountList, long[] turnoverCentList) {
+        long epochDay = date.toEpochDay();
+        if (epochDay < 0) {
+            return false;
+        }
+        int row = (int) (epochDay % RETENTION_DAYS);
+        if (rowDays[row] != epochDay) {
+            return false;
+        }
+        int offset = row * SLOTS_PER_DAY;
+        System.arraycopy(orderCounts, offset, orderCountList, 0, SLOTS_PER_DAY);
+        System.arraycopy(validOrderCounts, offset, validOrderCountList, 0, SLOTS_PER_DAY);
+        System.arraycopy(turnoverCents, offset, turnoverCentList, 0, SLOTS_PER_DAY);
+        return true;
+    }
+
+    /**
+     * 日期在环形数组中的行, 该行存放的是其他日期时先清空, 调用方需要持有锁
+     *
+     * @param epochDay
+     * @return
+     */
+    private int row(long epochDay) {
+        int row = (int) (epochDay % RETENTION_DAYS);
+        if (rowDays[row] != epochDay) {
+            int offset = row * SLOTS_PER_DAY;
+            Arrays.fill(orderCounts, offset, offset + SLOTS_PER_DAY, 0);
+            Arrays.fill(validOrderCounts, offset, offset + SLOTS_PER_DAY, 0);
+            Arrays.fill(turnoverCents, offset, offset + SLOTS_PER_DAY, 0);
+            rowDays[row] = epochDay;
+        }
+        return row;
+    }
+
+    /**
+     * 是否是保存在redis中的最近几天
+     *
+     * @param date
+     * @return
+     */
+    private boolean isRecent(LocalDate date) {
+        LocalDate today = LocalDate.now();
+        return !date.isBefore(today.minusDays(RECENT_DAYS - 1)) && !date.isAfter(today);
+    }
+
+    private void increment(LocalDateTime orderTime, String field, long delta) {
+        int slot = (orderTime.getHour() * 60 + orderTime.getMinute()) / SLOT_MINUTES;
+        versionedHash.increment(KEY_PREFIX + orderTime.toLocalDate(), field + slot, delta, TTL);
+    }
+
+    private long toCents(Double turnover) {
+        return turnover == null ? 0 : BigDecimal.valueOf(turnover).movePointRight(2).longValue();
+    }
+
+    private long parseLong(Object value) {
+        return value == null ? 0 : Long.parseLong((String) value);
+    }
+}
@@ -0,0 +1,165 @@
+package com.sky.report;
+
+import com.sky.properties.ReportQueryProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 统计查询并行执行器
+ * 互相独立的只读统计查询提交到固定大小的线程池中同时执行, 调用方再逐个取结果, 总耗时约等于最慢的一个查询;
+ * 每个查询从提交时开始计算超时时间, 超时或执行失败时只有该查询返回默认值, 不影响其他查询的结果,
+ * 调用方通过degraded得到使用了默认值的查询, 在返回结果中标明哪些数据不准确。
+ * 超时的查询不会中断执行线程(中断正在执行sql的线程会导致连接池关闭该连接), 查询结束后线程自然释放。
+ * 线程池队列已满时查询直接在调用方线程中执行。
+ * 每个查询的耗时通过 report.query 指标查看, 使用默认值的次数通过 report.query.degraded 指标查看
+ */
+@Component
+@Slf4j
+public class ParallelQueryExecutor {
+
+    @Autowired
+    private ReportQueryProperties reportQueryProperties;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = reportQueryProperties.getThreads();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(reportQueryProperties.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "report-query-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "reportQuery");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交一个统计查询
+     *
+     * @param name     查询名称, 用于日志和指标
+     * @param query    查询
+     * @param fallback 超时或执行失败时使用的默认值
+     * @return
+     */
+    public <T> Query<T> submit(String name, Callable<T> query, T fallback) {
+        Timer timer = Timer.builder("report.query").tag("query", name).register(meterRegistry);
+        Callable<T> timedQuery = () -> timer.recordCallable(query);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(reportQueryProperties.getTimeoutMillis());
+
+        Future<T> future;
+        try {
+            future = executor.submit(timedQuery);
+        } catch (RejectedExecutionException e) {
+            //线程池繁忙时直接在当前线程执行
+            CompletableFuture<T> completed = new CompletableFuture<>();
+            try {
+                completed.complete(timedQuery.call());
+            } catch (Exception ex) {
+                completed.completeExceptionally(ex);
+            }
+            future = completed;
+        }
+        return new Query<>(name, future, fallback, deadline);
+    }
+
+    /**
+     * 已经取过结果的查询中使用了默认值的查询名称
+     *
+     * @param queries
+     * @return 没有查询使用默认值时返回null
+     */
+    public static List<String> degraded(Query<?>... queries) {
+        List<String> names = new ArrayList<>();
+        for (Query<?> query : queries) {
+            if (query.isDegraded()) {
+                names.add(query.getName());
+            }
+        }
+        return names.isEmpty() ? null : names;
+    }
+
+    /**
+     * 已提交的统计查询
+     */
+    public class Query<T> {
+        private final String name;
+        private final Future<T> future;
+        private final T fallback;
+        private final long deadline;
+        //是否使用了默认值
+        private volatile boolean degraded;
+
+        private Query(String name, Future<T> future, T fallback, long deadline) {
+            this.name = name;
+            this.future = future;
+            this.fallback = fallback;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 等待查询结果, 超过超时时间或执行失败时返回默认值
+         *
+         * @return
+         */
+        public T get() {
+            try {
+                T result = future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                return result == null ? fallback : result;
+            } catch (TimeoutException e) {
+                future.cancel(false);
+                log.warn("统计查询超时, 使用默认值:{}", name);
+                return degrade("timeout");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+                return degrade("interrupted");
+            } catch (ExecutionException e) {
+                log.error("统计查询失败, 使用默认值:{}", name, e.getCause());
+                return degrade("error");
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDegraded() {
+            return degraded;
+        }
+
+        private T degrade(String reason) {
+            degraded = true;
+            meterRegistry.counter("report.query.degraded", "query", name, "reason", reason).increment();
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.sky.report;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.cache.NearCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * 报表按天缓存
+ * 每种报表数据按(报表类型, 日期)缓存, 只缓存今天之前的日期, 这些日期的数据除了极少数的订单状态变更外不会再变化, 缓存不设置过期时间;
+ * 查询一个时间区间时逐天读取缓存, 只有缓存中缺少的日期才调用加载函数, 不同的时间区间(例如最近7天和最近30天)共用每一天的缓存。
+ * 订单状态变更或汇总表重新计算后移除对应日期的缓存, 缓存注册到NearCacheManager中, 通过redis的发布订阅同时移除其他节点的缓存。
+ * 加载前先在缺少的日期放入加载标记, 加载完成后只有标记仍在时才替换为加载结果: 加载期间对应日期被移除(标记随之被移除)时不写入缓存,
+ * 避免把移除之前查询到的旧数据写回缓存。命中率通过 /actuator/metrics/cache.gets?tag=cache:reportDay 查看
+ */
+@Component
+public class ReportDayCache {
+
+    //每种报表最多缓存的天数
+    private static final long MAXIMUM_DAYS = 3660;
+    //在NearCacheManager中注册的缓存名称前缀
+    private static final String NAME_PREFIX = "reportDay.";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private NearCacheManager nearCacheManager;
+
+    private final Map<ReportType, Cache<Object, Object>> caches = new EnumMap<>(ReportType.class);
+
+    public ReportDayCache() {
+        for (ReportType type : ReportType.values()) {
+            caches.put(type, Caffeine.newBuilder()
+                    .maximumSize(MAXIMUM_DAYS)
+                    .recordStats()
+                    .build());
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        caches.forEach((type, cache) -> {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "reportDay", "type", type.name());
+            nearCacheManager.register(NAME_PREFIX + type.name(), cache);
+        });
+    }
+
+    /**
+     * 获取时间区间内每一天的报表数据, 区间必须在今天之前
+     * 缓存中缺少的日期合并为一个区间(从第一个缺少的日期到最后一个缺少的日期), 调用一次loader加载后放入缓存,
+     * 加载期间被移除的日期不放入缓存
+     *
+     * @param type   报表类型
+     * @param begin  开始日期(包含)
+     * @param end    结束日期(包含)
+     * @param loader 加载区间内每一天的数据, 返回结果按日期升序, 每一天一条记录
+     * @return 按日期升序, 每一天一条记录, 缓存的对象被多个请求共用, 调用方不能修改
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getDays(ReportType type, LocalDate begin, LocalDate end, BiFunction<LocalDate, LocalDate, List<T>> loader) {
+        Cache<Object, Object> cache = caches.get(type);
+        List<T> result = new ArrayList<>();
+        LocalDate firstMissing = null;
+        LocalDate lastMissing = null;
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            Object value = cache.getIfPresent(date);
+            if (value == null || value instanceof Loading) {
+                firstMissing = firstMissing == null ? date : firstMissing;
+                lastMissing = date;
+                value = null;
+            }
+            result.add((T) value);
+        }
+        if (firstMissing == null) {
+            return result;
+        }
+
+        //key: 日期 value: 加载标记, 其他请求正在加载同一日期时共用它放入的标记(标记仍在说明之后没有发生过移除)
+        Map<LocalDate, Object> markers = new HashMap<>();
+        for (LocalDate date = firstMissing; !date.isAfter(lastMissing); date = date.plusDays(1)) {
+            if (result.get((int) (date.toEpochDay() - begin.toEpochDay())) == null) {
+                Loading marker = new Loading();
+                Object existing = cache.asMap().putIfAbsent(date, marker);
+                markers.put(date, existing instanceof Loading ? existing : marker);
+            }
+        }
+
+        List<T> loaded;
+        try {
+            loaded = loader.apply(firstMissing, lastMissing);
+        } catch (RuntimeException e) {
+            markers.forEach((date, marker) -> cache.asMap().remove(date, marker));
+            throw e;
+        }
+        int offset = (int) (firstMissing.toEpochDay() - begin.toEpochDay());
+        for (int i = 0; i < loaded.size(); i++) {
+            LocalDate date = firstMissing.plusDays(i);
+            T value = loaded.get(i);
+            Object marker = markers.get(date);
+            if (marker != null) {
+                cache.asMap().replace(date, marker, value);
+            }
+            result.set(offset + i, value);
+        }
+        return result;
+    }
+
+    /**
+     * 移除本节点和其他节点时间区间内所有类型报表的缓存, 只缓存今天之前的日期, 今天及之后的日期不需要移除
+     *
+     * @param begin
+     * @param end
+     */
+    public void evict(LocalDate begin, LocalDate end) {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate evictEnd = end.isAfter(yesterday) ? yesterday : end;
+        for (ReportType type : caches.keySet()) {
+            for (LocalDate date = begin; !date.isAfter(evictEnd); date = date.plusDays(1)) {
+                nearCacheManager.evict(NAME_PREFIX + type.name(), date);
+            }
+        }
+    }
+
+    /**
+     * 加载标记, 每次加载使用新的实例, 按引用比较
+     */
+    private static final class Loading {
+    }
+
+    /**
+     * 报表类型
+     */
+    public enum ReportType {
+        //每天的营业额、订单数、用户数, 营业额统计、订单统计、用户统计共用
+        BUSINESS_STATS,
+        //每天各商品的销量
+        GOODS_SALES
+    }
+}
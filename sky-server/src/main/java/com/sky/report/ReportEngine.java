@@ -0,0 +1,247 @@
+package com.sky.report;
+
+import com.sky.dto.DailyGoodsSalesDTO;
+import com.sky.dto.DailyOrderStatsDTO;
+import com.sky.dto.DailyUserCountDTO;
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 报表统计引擎
+ * 今天之前的数据从每日营业数据汇总表(daily_business_stats)中读取, 只有今天(以及汇总表中缺少的日期)才实时统计;
+ * 实时统计时一次按日期分组的聚合查询得到整个时间区间内每一天的数据, 再在内存中补齐没有数据的日期,
+ * 订单统计只需要一次查询, 用户统计只需要两次查询(区间内每天的新增用户数 + 区间开始之前的用户总数);
+ * 今天之前每一天的结果放入按天的报表缓存, 重叠的时间区间只需要加载缓存中缺少的日期
+ */
+@Component
+public class ReportEngine {
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private UserMapper userMapper;
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private ReportDayCache reportDayCache;
+
+    /**
+     * 统计时间区间内每一天的订单和用户数据
+     *
+     * @param begin 开始日期(包含)
+     * @param end   结束日期(包含)
+     * @return 按日期升序排列, 每一天一条记录, 今天之前的记录来自缓存, 调用方不能修改
+     */
+    public List<BusinessDayStats> getDailyStats(LocalDate begin, LocalDate end) {
+        List<BusinessDayStats> statsList = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+
+        //今天之前的日期读取缓存, 缓存中没有的日期读取汇总表
+        LocalDate rollupEnd = end.isBefore(today) ? end : today.minusDays(1);
+        if (!begin.isAfter(rollupEnd)) {
+            statsList.addAll(reportDayCache.getDays(ReportDayCache.ReportType.BUSINESS_STATS, begin, rollupEnd, this::getFromRollup));
+        }
+
+        //今天及之后的日期实时统计
+        LocalDate liveBegin = begin.isAfter(today) ? begin : today;
+        if (!liveBegin.isAfter(end)) {
+            statsList.addAll(computeLive(liveBegin, end));
+        }
+        return statsList;
+    }
+
+    /**
+     * 统计时间区间内销量排名前limit的商品
+     * 今天之前每一天的各商品销量读取缓存, 今天及之后实时统计, 合并后取前limit名
+     *
+     * @param begin 开始日期(包含)
+     * @param end   结束日期(包含)
+     * @param limit
+     * @return 按销量降序
+     */
+    public List<GoodsSalesDTO> getSalesTop(LocalDate begin, LocalDate end, int limit) {
+        List<Map<String, Integer>> salesList = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+
+        LocalDate cacheEnd = end.isBefore(today) ? end : today.minusDays(1);
+        if (!begin.isAfter(cacheEnd)) {
+            salesList.addAll(reportDayCache.getDays(ReportDayCache.ReportType.GOODS_SALES, begin, cacheEnd, this::computeGoodsSales));
+        }
+        LocalDate liveBegin = begin.isAfter(today) ? begin : today;
+        if (!liveBegin.isAfter(end)) {
+            salesList.addAll(computeGoodsSales(liveBegin, end));
+        }
+
+        //key: 商品名称 value: 销量
+        Map<String, Integer> totals = new HashMap<>();
+        for (Map<String, Integer> sales : salesList) {
+            sales.forEach((name, number) -> totals.merge(name, number, Integer::sum));
+        }
+        return totals.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(entry -> new GoodsSalesDTO(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 查询时间区间内每一天各商品的销量
+     *
+     * @param begin
+     * @param end
+     * @return 按日期升序, 每一天一条记录, key: 商品名称 value: 销量
+     */
+    private List<Map<String, Integer>> computeGoodsSales(LocalDate begin, LocalDate end) {
+        List<Map<String, Integer>> salesList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            salesList.add(new HashMap<>());
+        }
+        List<DailyGoodsSalesDTO> goodsSalesList = orderMapper.sumSalesGroupByDate(
+                LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX), Orders.COMPLETED);
+        for (DailyGoodsSalesDTO goodsSales : goodsSalesList) {
+            salesList.get(index(goodsSales.getDate(), begin)).put(goodsSales.getName(), goodsSales.getNumber());
+        }
+        return salesList;
+    }
+
+    /**
+     * 直接查询orders表和user表, 实时统计时间区间内每一天的订单和用户数据
+     *
+     * @param begin 开始日期(包含)
+     * @param end   结束日期(包含)
+     * @return 按日期升序排列, 每一天一条记录
+     */
+    public List<BusinessDayStats> computeLive(LocalDate begin, LocalDate end) {
+        List<BusinessDayStats> statsList = emptyDays(begin, end);
+        if (statsList.isEmpty()) {
+            return statsList;
+        }
+        fillOrderStats(statsList, begin, end);
+        fillUserStats(statsList, begin, end);
+        return statsList;
+    }
+
+    /**
+     * 从汇总表读取数据, 汇总表中缺少的日期(例如尚未对账的日期)实时统计
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    private List<BusinessDayStats> getFromRollup(LocalDate begin, LocalDate end) {
+        List<BusinessDayStats> statsList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            statsList.add(null);
+        }
+
+        LocalDate firstMissing = null;
+        LocalDate lastMissing = null;
+        List<DailyBusinessStats> rollupList = dailyBusinessStatsMapper.getByDateRange(begin, end);
+        for (DailyBusinessStats rollup : rollupList) {
+            statsList.set(index(rollup.getDate(), begin), BusinessDayStats.builder()
+                    .date(rollup.getDate())
+                    .turnover(rollup.getTurnover().doubleValue())
+                    .orderCount(rollup.getOrderCount())
+                    .validOrderCount(rollup.getValidOrderCount())
+                    .newUsers(rollup.getNewUsers())
+                    .totalUsers(rollup.getTotalUsers())
+                    .build());
+        }
+        for (int i = 0; i < statsList.size(); i++) {
+            if (statsList.get(i) == null) {
+                LocalDate date = begin.plusDays(i);
+                firstMissing = firstMissing == null ? date : firstMissing;
+                lastMissing = date;
+            }
+        }
+
+        if (firstMissing != null) {
+            for (BusinessDayStats stats : computeLive(firstMissing, lastMissing)) {
+                int index = index(stats.getDate(), begin);
+                if (statsList.get(index) == null) {
+                    statsList.set(index, stats);
+                }
+            }
+        }
+        return statsList;
+    }
+
+    /**
+     * 查询每天的订单总数、有效订单数和营业额
+     *
+     * @param statsList
+     * @param begin
+     * @param end
+     */
+    private void fillOrderStats(List<BusinessDayStats> statsList, LocalDate begin, LocalDate end) {
+        //select date(order_time), count(id), sum(status = 5), sum(status = 5 ? amount : 0) ... group by date(order_time)
+        List<DailyOrderStatsDTO> orderStatsList = orderMapper.sumGroupByDate(
+                LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX), Orders.COMPLETED);
+        for (DailyOrderStatsDTO orderStats : orderStatsList) {
+            BusinessDayStats stats = statsList.get(index(orderStats.getDate(), begin));
+            stats.setTurnover(orderStats.getTurnover() == null ? 0.0 : orderStats.getTurnover());
+            stats.setOrderCount(orderStats.getOrderCount());
+            stats.setValidOrderCount(orderStats.getValidOrderCount());
+        }
+    }
+
+    /**
+     * 查询每天的新增用户数, 并以区间开始之前的用户总数为起点做前缀和得到每天的用户总数
+     *
+     * @param statsList
+     * @param begin
+     * @param end
+     */
+    private void fillUserStats(List<BusinessDayStats> statsList, LocalDate begin, LocalDate end) {
+        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
+        List<DailyUserCountDTO> userCountList = userMapper.countGroupByDate(beginTime, LocalDateTime.of(end, LocalTime.MAX));
+        for (DailyUserCountDTO userCount : userCountList) {
+            statsList.get(index(userCount.getDate(), begin)).setNewUsers(userCount.getCount());
+        }
+
+        //区间开始之前的用户总数
+        Map map = new HashMap();
+        map.put("end", beginTime);
+        Integer totalUsers = userMapper.countByMap(map);
+
+        for (BusinessDayStats stats : statsList) {
+            totalUsers += stats.getNewUsers();
+            stats.setTotalUsers(totalUsers);
+        }
+    }
+
+    /**
+     * 生成从begin到end每一天的空数据, end早于begin时返回空集合
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    private List<BusinessDayStats> emptyDays(LocalDate begin, LocalDate end) {
+        List<BusinessDayStats> statsList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            statsList.add(BusinessDayStats.empty(date));
+        }
+        return statsList;
+    }
+
+    private int index(LocalDate date, LocalDate begin) {
+        return (int) (date.toEpochDay() - begin.toEpochDay());
+    }
+}
@@ -0,0 +1,279 @@
+package com.sky.report;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.ReportExportException;
+import com.sky.properties.ReportExportProperties;
+import com.sky.vo.ReportExportJobVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 运营数据报表异步导出任务管理
+ * 导出任务在固定大小的线程池中执行, 等待队列已满时拒绝新任务, 不会占用处理下单等请求的tomcat线程;
+ * 任务状态和导出的文件都保存在redis中, 多个sky-server节点部署时查询状态和下载文件的请求可以由任意节点处理,
+ * 超过保存时间后由redis自动删除; 相同日期区间的任务在执行中(或已完成且数据不会再变化)时直接返回已有的任务
+ */
+@Component
+@Slf4j
+public class ReportExportJobManager {
+
+    //任务状态, hash结构 key: report:export:job:{任务id}
+    private static final String JOB_KEY_PREFIX = "report:export:job:";
+    //日期区间最近一次提交的任务id key: report:export:range:{开始日期}_{结束日期}
+    private static final String RANGE_KEY_PREFIX = "report:export:range:";
+    //导出的文件 key: report:export:file:{任务id}
+    private static final String FILE_KEY_PREFIX = "report:export:file:";
+
+    //查询数据占总进度的比例, 剩余部分按写入的行数计算
+    private static final int QUERY_PROGRESS = 10;
+
+    //日期区间仍然指向之前的任务(或没有任务)时才替换为新的任务, 多个节点同时提交相同区间的任务时只有一个成功
+    private static final DefaultRedisScript<Long> REPLACE_RANGE_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('get', KEYS[1]) "
+                    + "if (current == false and ARGV[1] == '') or current == ARGV[1] then "
+                    + "redis.call('set', KEYS[1], ARGV[2], 'EX', ARGV[3]) return 1 end "
+                    + "return 0",
+            Long.class);
+
+    @Autowired
+    private ReportExportProperties reportExportProperties;
+    @Autowired
+    private ReportEngine reportEngine;
+    @Autowired
+    private BusinessDataExcelWriter businessDataExcelWriter;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = reportExportProperties.getThreads();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(reportExportProperties.getQueueCapacity()),
+                runnable -> new Thread(runnable, "report-export-" + threadNumber.incrementAndGet()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交导出任务, 相同日期区间已有可用的任务时直接返回该任务
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    public ReportExportJobVO submit(LocalDate begin, LocalDate end) {
+        String rangeKey = RANGE_KEY_PREFIX + begin + "_" + end;
+        String existingId = stringRedisTemplate.opsForValue().get(rangeKey);
+        ReportExportJobVO existing = findJob(existingId);
+        if (existing != null && isReusable(existing)) {
+            return existing;
+        }
+
+        ReportExportJobVO job = ReportExportJobVO.builder()
+                .jobId(UUID.randomUUID().toString().replace("-", ""))
+                .begin(begin)
+                .end(end)
+                .status(Status.PENDING.name())
+                .progress(0)
+                .createTime(LocalDateTime.now())
+                .build();
+        saveJob(job);
+
+        Long replaced = stringRedisTemplate.execute(REPLACE_RANGE_SCRIPT, Collections.singletonList(rangeKey),
+                existingId == null ? "" : existingId, job.getJobId(), String.valueOf(ttl().getSeconds()));
+        if (!Long.valueOf(1).equals(replaced)) {
+            //其他节点同时提交了相同区间的任务, 复用该任务
+            ReportExportJobVO other = findJob(stringRedisTemplate.opsForValue().get(rangeKey));
+            if (other != null) {
+                stringRedisTemplate.delete(JOB_KEY_PREFIX + job.getJobId());
+                return other;
+            }
+        }
+
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            stringRedisTemplate.delete(JOB_KEY_PREFIX + job.getJobId());
+            throw new ReportExportException(MessageConstant.REPORT_EXPORT_BUSY);
+        }
+        return job;
+    }
+
+    /**
+     * 查询任务状态
+     *
+     * @param jobId
+     * @return
+     */
+    public ReportExportJobVO getJob(String jobId) {
+        ReportExportJobVO job = findJob(jobId);
+        if (job == null) {
+            throw new ReportExportException(MessageConstant.REPORT_EXPORT_JOB_NOT_FOUND);
+        }
+        return job;
+    }
+
+    /**
+     * 把导出完成的文件写入输出流
+     *
+     * @param jobId
+     * @param outputStream
+     * @throws IOException
+     */
+    public void download(String jobId, OutputStream outputStream) throws IOException {
+        ReportExportJobVO job = getJob(jobId);
+        byte[] file = Status.SUCCESS.name().equals(job.getStatus()) ? readFile(jobId) : null;
+        if (file == null) {
+            throw new ReportExportException(MessageConstant.REPORT_EXPORT_NOT_FINISHED);
+        }
+        outputStream.write(file);
+    }
+
+    private void run(ReportExportJobVO job) {
+        String jobKey = JOB_KEY_PREFIX + job.getJobId();
+        stringRedisTemplate.opsForHash().put(jobKey, "status", Status.RUNNING.name());
+        try {
+            List<BusinessDayStats> statsList = reportEngine.getDailyStats(job.getBegin(), job.getEnd());
+            updateProgress(jobKey, QUERY_PROGRESS);
+
+            int total = Math.max(statsList.size(), 1);
+            //进度只在百分比变化时写入redis
+            AtomicInteger lastProgress = new AtomicInteger(QUERY_PROGRESS);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            businessDataExcelWriter.write(job.getBegin(), job.getEnd(), statsList, outputStream, rows -> {
+                int progress = QUERY_PROGRESS + (100 - QUERY_PROGRESS - 1) * rows / total;
+                if (lastProgress.getAndSet(progress) != progress) {
+                    updateProgress(jobKey, progress);
+                }
+            });
+            writeFile(job.getJobId(), outputStream.toByteArray());
+
+            Map<String, String> fields = new HashMap<>();
+            fields.put("status", Status.SUCCESS.name());
+            fields.put("progress", "100");
+            fields.put("finishTime", LocalDateTime.now().toString());
+            stringRedisTemplate.opsForHash().putAll(jobKey, fields);
+        } catch (Exception e) {
+            log.error("运营数据报表导出失败:{} 至 {}", job.getBegin(), job.getEnd(), e);
+            Map<String, String> fields = new HashMap<>();
+            fields.put("status", Status.FAILED.name());
+            fields.put("message", String.valueOf(e.getMessage()));
+            fields.put("finishTime", LocalDateTime.now().toString());
+            stringRedisTemplate.opsForHash().putAll(jobKey, fields);
+        } finally {
+            //保存时间从任务完成时开始计算
+            stringRedisTemplate.expire(jobKey, ttl());
+            stringRedisTemplate.expire(RANGE_KEY_PREFIX + job.getBegin() + "_" + job.getEnd(), ttl());
+        }
+    }
+
+    /**
+     * 等待执行和执行中的任务可以复用; 已完成的任务只有在日期区间不包含今天(数据不会再变化)时才复用
+     *
+     * @param job
+     * @return
+     */
+    private boolean isReusable(ReportExportJobVO job) {
+        switch (Status.valueOf(job.getStatus())) {
+            case PENDING:
+            case RUNNING:
+                return true;
+            case SUCCESS:
+                return job.getEnd().isBefore(LocalDate.now())
+                        && Boolean.TRUE.equals(stringRedisTemplate.hasKey(FILE_KEY_PREFIX + job.getJobId()));
+            default:
+                return false;
+        }
+    }
+
+    private void saveJob(ReportExportJobVO job) {
+        String jobKey = JOB_KEY_PREFIX + job.getJobId();
+        Map<String, String> fields = new HashMap<>();
+        fields.put("begin", job.getBegin().toString());
+        fields.put("end", job.getEnd().toString());
+        fields.put("status", job.getStatus());
+        fields.put("progress", String.valueOf(job.getProgress()));
+        fields.put("createTime", job.getCreateTime().toString());
+        stringRedisTemplate.opsForHash().putAll(jobKey, fields);
+        stringRedisTemplate.expire(jobKey, ttl());
+    }
+
+    private ReportExportJobVO findJob(String jobId) {
+        if (jobId == null) {
+            return null;
+        }
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(JOB_KEY_PREFIX + jobId);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        Object finishTime = fields.get("finishTime");
+        return ReportExportJobVO.builder()
+                .jobId(jobId)
+                .begin(LocalDate.parse((String) fields.get("begin")))
+                .end(LocalDate.parse((String) fields.get("end")))
+                .status((String) fields.get("status"))
+                .progress(Integer.valueOf((String) fields.get("progress")))
+                .message((String) fields.get("message"))
+                .createTime(LocalDateTime.parse((String) fields.get("createTime")))
+                .finishTime(finishTime == null ? null : LocalDateTime.parse((String) finishTime))
+                .build();
+    }
+
+    private void updateProgress(String jobKey, int progress) {
+        stringRedisTemplate.opsForHash().put(jobKey, "progress", String.valueOf(progress));
+    }
+
+    private void writeFile(String jobId, byte[] file) {
+        byte[] key = (FILE_KEY_PREFIX + jobId).getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(key, file, Expiration.from(ttl()), RedisStringCommands.SetOption.upsert()));
+    }
+
+    private byte[] readFile(String jobId) {
+        byte[] key = (FILE_KEY_PREFIX + jobId).getBytes(StandardCharsets.UTF_8);
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+    }
+
+    private Duration ttl() {
+        return Duration.ofMinutes(reportExportProperties.getTtlMinutes());
+    }
+
+    /**
+     * 任务状态
+     */
+    public enum Status {
+        PENDING, RUNNING, SUCCESS, FAILED
+    }
+}
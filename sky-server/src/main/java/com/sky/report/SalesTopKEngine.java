@@ -0,0 +1,334 @@
+package com.sky.report;
+
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.HourlyGoodsSalesDTO;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.event.OrderCompletedEvent;
+import com.sky.event.OrderStatusBatchChangedEvent;
+import com.sky.mapper.OrderMapper;
+import com.sky.redis.RedisLock;
+import com.sky.redis.VersionedHash;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 商品销量排行
+ * 已完成订单的销量按下单时间所在的整点分桶, 查询时合并时间区间内所有桶的计数取前N名; 只保留最近RETENTION_DAYS天的数据,
+ * 更早的时间区间由调用方查询数据库。
+ * 多个sky-server节点部署时订单可能在任意节点完成, 所以最近RECENT_HOURS小时的桶保存在redis的hash中(key: sales:hour:{整点}),
+ * 由完成订单的节点根据订单完成事件增量累加, 所有节点读取同一份数据; 下单时间早于最近RECENT_HOURS小时的订单已经全部完成或取消
+ * (配送中的订单最晚由定时任务在第二天凌晨完成), 这部分桶已经稳定, 每个节点在内存中各保存一份, 每个桶使用Space-Saving算法统计。
+ * 数据库只用于项目启动时加载稳定的桶, 以及由一个节点与redis中最近的桶对账(启动时和定时任务批量完成订单后, 对账方式见VersionedHash);
+ * 每小时各节点把刚刚稳定的桶从redis读取到内存中, 不再查询数据库
+ */
+@Component
+@Slf4j
+public class SalesTopKEngine {
+
+    //保留的天数(含今天)
+    private static final int RETENTION_DAYS = 31;
+    //每个桶的计数器数量, 一个小时内售出的不同商品不超过该数量时统计结果是精确的
+    private static final int BUCKET_CAPACITY = 64;
+    //最近多少个小时的销量保存在redis中
+    private static final int RECENT_HOURS = 48;
+
+    //最近的桶 key: sales:hour:{yyyyMMddHH} field: 商品名称 value: 销量
+    private static final String KEY_PREFIX = "sales:hour:";
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHH");
+    //桶稳定后还要保留一段时间, 供各节点读取到内存中
+    private static final Duration TTL = Duration.ofHours(RECENT_HOURS + 24);
+
+    //对账锁, 同一时间只有一个节点对账
+    private static final String RECONCILE_LOCK_KEY = "lock:reconcile:sales:hour";
+    private static final Duration RECONCILE_LOCK_TTL = Duration.ofSeconds(60);
+    //查询数据库期间数据发生变化时的重试次数
+    private static final int RECONCILE_ATTEMPTS = 3;
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private VersionedHash versionedHash;
+    @Autowired
+    private RedisLock redisLock;
+
+    //内存中保存的稳定的桶和对应的时间区间, 为null时表示尚未完成加载
+    private volatile Window window;
+
+    /**
+     * 项目启动完成后从数据库加载稳定的桶, 并与redis中最近的桶对账
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        long start = System.currentTimeMillis();
+        LocalDateTime since = LocalDateTime.of(LocalDate.now().minusDays(RETENTION_DAYS - 1), LocalTime.MIN);
+        LocalDateTime settledBefore = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(RECENT_HOURS);
+
+        NavigableMap<LocalDateTime, SpaceSavingSketch> buckets = new TreeMap<>();
+        for (HourlyGoodsSalesDTO sales : orderMapper.sumSalesGroupByHour(since, settledBefore, Orders.COMPLETED)) {
+            buckets.computeIfAbsent(sales.getHour(), hour -> new SpaceSavingSketch(BUCKET_CAPACITY))
+                    .offer(sales.getName(), sales.getNumber());
+        }
+        window = new Window(since, settledBefore, buckets);
+        log.info("商品销量排行加载完成, 桶数量:{}, 耗时:{}ms", buckets.size(), System.currentTimeMillis() - start);
+
+        reconcile();
+    }
+
+    /**
+     * 每小时把刚刚稳定的桶从redis读取到内存中, 同时删除超过保留天数的桶
+     */
+    @Scheduled(cron = "0 0 * * * ?")
+    public synchronized void advance() {
+        Window current = window;
+        if (current == null) {
+            return;
+        }
+        LocalDateTime since = LocalDateTime.of(LocalDate.now().minusDays(RETENTION_DAYS - 1), LocalTime.MIN);
+        LocalDateTime settledBefore = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(RECENT_HOURS);
+
+        NavigableMap<LocalDateTime, SpaceSavingSketch> buckets = new TreeMap<>(current.buckets.tailMap(since, true));
+        List<LocalDateTime> hours = hoursBetween(current.settledBefore.isBefore(since) ? since : current.settledBefore,
+                settledBefore.minusHours(1));
+        List<Map<String, Long>> salesList = readHours(hours);
+        for (int i = 0; i < hours.size(); i++) {
+            if (salesList.get(i).isEmpty()) {
+                continue;
+            }
+            SpaceSavingSketch bucket = new SpaceSavingSketch(BUCKET_CAPACITY);
+            salesList.get(i).forEach(bucket::offer);
+            buckets.put(hours.get(i), bucket);
+        }
+        window = new Window(since, settledBefore, buckets);
+    }
+
+    /**
+     * 订单完成后累加下单时间所在的桶
+     *
+     * @param event
+     */
+    @EventListener
+    public void onOrderCompleted(OrderCompletedEvent event) {
+        LocalDateTime orderTime = event.getOrders().getOrderTime();
+        if (orderTime == null || event.getOrderDetailList() == null) {
+            return;
+        }
+        String key = hourKey(orderTime.truncatedTo(ChronoUnit.HOURS));
+        for (OrderDetail orderDetail : event.getOrderDetailList()) {
+            versionedHash.increment(key, orderDetail.getName(), orderDetail.getNumber(), TTL);
+        }
+    }
+
+    /**
+     * 定时任务批量完成订单后无法得知每个订单的商品, 与数据库重新对账, 有事务时在事务提交后执行
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusBatchChanged(OrderStatusBatchChangedEvent event) {
+        if (!Orders.COMPLETED.equals(event.getToStatus())) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("商品销量排行对账失败:{}", event, e);
+        }
+    }
+
+    /**
+     * 与数据库对账redis中最近的桶, 其他节点正在对账时直接返回
+     */
+    public void reconcile() {
+        String token = redisLock.tryLock(RECONCILE_LOCK_KEY, RECONCILE_LOCK_TTL);
+        if (token == null) {
+            return;
+        }
+        try {
+            for (int attempt = 1; attempt <= RECONCILE_ATTEMPTS; attempt++) {
+                if (reconcileOnce()) {
+                    return;
+                }
+            }
+            log.warn("商品销量排行对账期间数据持续变化, 等待下次对账");
+        } finally {
+            redisLock.unlock(RECONCILE_LOCK_KEY, token);
+        }
+    }
+
+    /**
+     * 先读取每个桶的版本号再查询数据库, 版本号没有变化的桶被覆盖
+     *
+     * @return 是否所有的桶都已覆盖
+     */
+    private boolean reconcileOnce() {
+        LocalDateTime begin = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(RECENT_HOURS);
+        List<LocalDateTime> hours = hoursBetween(begin, LocalDateTime.now());
+        Map<LocalDateTime, String> versions = new LinkedHashMap<>();
+        for (LocalDateTime hour : hours) {
+            versions.put(hour, versionedHash.getVersion(hourKey(hour)));
+        }
+
+        //key: 整点 value: 该小时各商品的销量
+        Map<LocalDateTime, Map<String, String>> salesMap = new HashMap<>();
+        for (HourlyGoodsSalesDTO sales : orderMapper.sumSalesGroupByHour(begin, null, Orders.COMPLETED)) {
+            salesMap.computeIfAbsent(sales.getHour(), hour -> new HashMap<>())
+                    .put(sales.getName(), String.valueOf(sales.getNumber()));
+        }
+
+        boolean replaced = true;
+        for (Map.Entry<LocalDateTime, String> entry : versions.entrySet()) {
+            Map<String, String> fields = salesMap.get(entry.getKey());
+            if (fields != null) {
+                replaced &= versionedHash.replaceIfVersion(hourKey(entry.getKey()), entry.getValue(), fields, TTL);
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * 查询时间区间内销量排名前limit的商品, 稳定的部分读取内存中的桶, 最近RECENT_HOURS小时的部分读取redis
+     *
+     * @param begin
+     * @param end
+     * @param limit
+     * @return 时间区间早于内存中保留的区间或尚未加载完成时返回null
+     */
+    public TopSales getTop(LocalDateTime begin, LocalDateTime end, int limit) {
+        Window current = window;
+        if (current == null || begin.isBefore(current.since)) {
+            return null;
+        }
+
+        //key: 商品名称 value: 销量
+        Map<String, Long> totals = new HashMap<>();
+        boolean exact = true;
+        LocalDateTime bucketBegin = begin.truncatedTo(ChronoUnit.HOURS);
+        if (bucketBegin.isBefore(current.settledBefore)) {
+            NavigableMap<LocalDateTime, SpaceSavingSketch> range = end.isBefore(current.settledBefore)
+                    ? current.buckets.subMap(bucketBegin, true, end, true)
+                    : current.buckets.subMap(bucketBegin, true, current.settledBefore, false);
+            for (SpaceSavingSketch bucket : range.values()) {
+                exact &= bucket.mergeInto(totals);
+            }
+        }
+        if (!end.isBefore(current.settledBefore)) {
+            LocalDateTime recentBegin = bucketBegin.isAfter(current.settledBefore) ? bucketBegin : current.settledBefore;
+            LocalDateTime now = LocalDateTime.now();
+            for (Map<String, Long> sales : readHours(hoursBetween(recentBegin, end.isAfter(now) ? now : end))) {
+                sales.forEach((name, number) -> totals.merge(name, number, Long::sum));
+            }
+        }
+
+        List<GoodsSalesDTO> salesList = new ArrayList<>();
+        totals.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .forEach(entry -> salesList.add(new GoodsSalesDTO(entry.getKey(), entry.getValue().intValue())));
+        return new TopSales(salesList, exact);
+    }
+
+    /**
+     * 通过一次pipeline读取多个整点的桶
+     *
+     * @param hours
+     * @return 与hours一一对应, key: 商品名称 value: 销量
+     */
+    private List<Map<String, Long>> readHours(List<LocalDateTime> hours) {
+        List<Map<String, Long>> salesList = new ArrayList<>(hours.size());
+        if (hours.isEmpty()) {
+            return salesList;
+        }
+        List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                for (LocalDateTime hour : hours) {
+                    operations.opsForHash().entries((K) hourKey(hour));
+                }
+                return null;
+            }
+        });
+        for (Object result : results) {
+            Map<String, Long> sales = new HashMap<>();
+            ((Map<?, ?>) result).forEach((field, value) -> {
+                if (!VersionedHash.VERSION_FIELD.equals(field)) {
+                    sales.put((String) field, Long.parseLong((String) value));
+                }
+            });
+            salesList.add(sales);
+        }
+        return salesList;
+    }
+
+    /**
+     * 区间内的所有整点
+     *
+     * @param begin 包含
+     * @param end   包含end所在的整点
+     * @return
+     */
+    private static List<LocalDateTime> hoursBetween(LocalDateTime begin, LocalDateTime end) {
+        List<LocalDateTime> hours = new ArrayList<>();
+        for (LocalDateTime hour = begin.truncatedTo(ChronoUnit.HOURS); !hour.isAfter(end); hour = hour.plusHours(1)) {
+            hours.add(hour);
+        }
+        return hours;
+    }
+
+    private static String hourKey(LocalDateTime hour) {
+        return KEY_PREFIX + HOUR_FORMATTER.format(hour);
+    }
+
+    /**
+     * 内存中保存的时间区间[since, settledBefore)和其中的桶, 重新加载和每小时推进时整体替换
+     */
+    @AllArgsConstructor
+    private static class Window {
+        private final LocalDateTime since;
+        //早于该时间的桶已经稳定, 之后的销量读取redis
+        private final LocalDateTime settledBefore;
+        //key: 下单时间所在的整点
+        private final NavigableMap<LocalDateTime, SpaceSavingSketch> buckets;
+    }
+
+    /**
+     * 销量排行查询结果
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class TopSales {
+        //按销量降序
+        private final List<GoodsSalesDTO> salesList;
+        //销量是否都是精确值
+        private final boolean exact;
+    }
+}
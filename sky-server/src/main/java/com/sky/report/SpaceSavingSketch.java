@@ -0,0 +1,77 @@
+package com.sky.report;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Space-Saving算法的频繁项统计
+ * 最多保留capacity个计数器, 计数器已满时新出现的商品替换计数最小的计数器, 新计数器的销量从被替换的计数开始累加;
+ * 任何真实销量大于(总销量/capacity)的商品一定会保留在计数器中, 统计的销量只会偏大不会偏小。
+ * 从未发生过替换时所有计数都是精确值
+ */
+public class SpaceSavingSketch {
+
+    private final int capacity;
+
+    //key: 商品名称
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    //是否从未发生过替换
+    private boolean exact = true;
+
+    public SpaceSavingSketch(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * 累加商品的销量
+     *
+     * @param name
+     * @param number
+     */
+    public synchronized void offer(String name, long number) {
+        Counter counter = counters.get(name);
+        if (counter != null) {
+            counter.count += number;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(name, new Counter(number));
+            return;
+        }
+
+        //替换计数最小的计数器, 计数器数量很少, 直接遍历查找
+        String minName = null;
+        long minCount = Long.MAX_VALUE;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (entry.getValue().count < minCount) {
+                minName = entry.getKey();
+                minCount = entry.getValue().count;
+            }
+        }
+        counters.remove(minName);
+        counters.put(name, new Counter(minCount + number));
+        exact = false;
+    }
+
+    /**
+     * 把所有计数累加到totals中
+     *
+     * @param totals key: 商品名称 value: 销量
+     * @return 本统计的计数是否都是精确值
+     */
+    public synchronized boolean mergeInto(Map<String, Long> totals) {
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            totals.merge(entry.getKey(), entry.getValue().count, Long::sum);
+        }
+        return exact;
+    }
+
+    private static class Counter {
+        private long count;
+
+        private Counter(long count) {
+            this.count = count;
+        }
+    }
+}
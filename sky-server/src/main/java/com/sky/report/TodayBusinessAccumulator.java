@@ -0,0 +1,276 @@
+package com.sky.report;
+
+import com.sky.entity.Orders;
+import com.sky.event.OrderCompletedEvent;
+import com.sky.event.OrderStatusBatchChangedEvent;
+import com.sky.event.UserRegisteredEvent;
+import com.sky.order.OrderStatusCounter;
+import com.sky.redis.RedisLock;
+import com.sky.redis.VersionedHash;
+import com.sky.vo.BusinessDataVO;
+import com.sky.vo.OrderOverViewVO;
+import com.sky.vo.TodayDashboardVO;
+import com.sky.websocket.MerchantNotification;
+import com.sky.websocket.MerchantNotificationBus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 工作台今日数据累加器
+ * 今日营业额和新增用户数保存在redis的hash中, 由处理订单完成和用户注册的节点增量累加, 各状态的订单数量来自订单状态计数器,
+ * 多个sky-server节点读取的是同一份数据, 工作台查询今日数据时不再查询数据库;
+ * 持有推送租约的一个节点每秒检查一次数据是否变化, 有变化时广播给所有节点, 由各节点通过WebSocket推送给连接的商家端, 商家端不需要再轮询。
+ * 定时任务批量修改订单状态后以及每5分钟由其中一个节点与数据库对账一次, 对账方式与订单状态计数器相同(见VersionedHash)
+ */
+@Component
+@Slf4j
+public class TodayBusinessAccumulator {
+
+    //今日数据 key: workspace:today:{日期}
+    private static final String KEY_PREFIX = "workspace:today:";
+    //营业额, 单位为分
+    private static final String TURNOVER_FIELD = "turnoverCents";
+    private static final String NEW_USERS_FIELD = "newUsers";
+    //已经与数据库对账过的标记, 没有该标记时(跨天后或redis数据丢失)读取前先对账
+    private static final String RECONCILED_FIELD = "reconciled";
+    private static final Duration TTL = Duration.ofDays(2);
+
+    //对账锁, 同一时间只有一个节点对账
+    private static final String RECONCILE_LOCK_KEY = "lock:reconcile:workspace:today";
+    private static final Duration RECONCILE_LOCK_TTL = Duration.ofSeconds(30);
+    //定时对账的标记, 每个周期只有设置成功的节点执行定时对账
+    private static final String SCHEDULED_RECONCILE_KEY = "reconcile:workspace:today:scheduled";
+    private static final Duration SCHEDULED_RECONCILE_INTERVAL = Duration.ofMinutes(5);
+    //查询数据库期间数据发生变化时的重试次数
+    private static final int RECONCILE_ATTEMPTS = 3;
+    //推送租约, 只有持有租约的节点检查并广播今日数据
+    private static final String PUSH_LEASE_KEY = "lease:workspace:today:push";
+    private static final Duration PUSH_LEASE_TTL = Duration.ofSeconds(5);
+
+    @Autowired
+    private ReportEngine reportEngine;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private MerchantNotificationBus merchantNotificationBus;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private VersionedHash versionedHash;
+    @Autowired
+    private RedisLock redisLock;
+
+    //最近一次广播的数据, 只由推送定时任务读写
+    private TodayDashboardVO lastPushed;
+
+    /**
+     * 项目启动完成后从数据库加载今日数据
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        reconcile();
+    }
+
+    /**
+     * 定时与数据库对账, 每5分钟由其中一个节点执行一次
+     */
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    public void scheduledReconcile() {
+        Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(SCHEDULED_RECONCILE_KEY, "1", SCHEDULED_RECONCILE_INTERVAL);
+        if (Boolean.TRUE.equals(first)) {
+            reconcile();
+        }
+    }
+
+    /**
+     * 与数据库对账, 其他节点正在对账时直接返回
+     */
+    public void reconcile() {
+        String token = redisLock.tryLock(RECONCILE_LOCK_KEY, RECONCILE_LOCK_TTL);
+        if (token == null) {
+            return;
+        }
+        try {
+            for (int attempt = 1; attempt <= RECONCILE_ATTEMPTS; attempt++) {
+                if (reconcileOnce()) {
+                    return;
+                }
+            }
+            log.warn("工作台今日数据对账期间数据持续变化, 等待下次对账");
+        } finally {
+            redisLock.unlock(RECONCILE_LOCK_KEY, token);
+        }
+    }
+
+    /**
+     * 先读取版本号再查询数据库, 版本号没有变化时覆盖
+     *
+     * @return 是否已覆盖
+     */
+    private boolean reconcileOnce() {
+        LocalDate date = LocalDate.now();
+        String key = KEY_PREFIX + date;
+        String version = versionedHash.getVersion(key);
+        BusinessDayStats stats = reportEngine.computeLive(date, date).get(0);
+        Map<String, String> fields = new HashMap<>();
+        fields.put(TURNOVER_FIELD, String.valueOf(BigDecimal.valueOf(stats.getTurnover()).movePointRight(2).longValue()));
+        fields.put(NEW_USERS_FIELD, String.valueOf(stats.getNewUsers()));
+        fields.put(RECONCILED_FIELD, "1");
+        return versionedHash.replaceIfVersion(key, version, fields, TTL);
+    }
+
+    /**
+     * 今日下单的订单完成后累加营业额
+     *
+     * @param event
+     */
+    @EventListener
+    public void onOrderCompleted(OrderCompletedEvent event) {
+        Orders orders = event.getOrders();
+        if (orders.getAmount() != null && isToday(orders.getOrderTime())) {
+            increment(TURNOVER_FIELD, orders.getAmount().movePointRight(2).longValue());
+        }
+    }
+
+    /**
+     * 新用户注册后累加新增用户数, 有事务时在事务提交后执行
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserRegistered(UserRegisteredEvent event) {
+        if (event.getCreateTime() == null || isToday(event.getCreateTime())) {
+            increment(NEW_USERS_FIELD, 1);
+        }
+    }
+
+    /**
+     * 定时任务批量修改订单状态后无法得知每个订单的金额, 直接与数据库重新对账
+     *
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusBatchChanged(OrderStatusBatchChangedEvent event) {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("工作台今日数据对账失败:{}", event, e);
+        }
+    }
+
+    /**
+     * 每秒检查一次今日数据, 只有持有推送租约的节点检查, 数据发生变化时广播给所有节点
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void push() {
+        if (!redisLock.holdLease(PUSH_LEASE_KEY, PUSH_LEASE_TTL)) {
+            //重新获得租约后第一次检查时总是广播
+            lastPushed = null;
+            return;
+        }
+        TodayDashboardVO dashboard = getDashboard();
+        if (!dashboard.equals(lastPushed)) {
+            merchantNotificationBus.broadcast(MerchantNotification.dashboard(dashboard));
+            lastPushed = dashboard;
+        }
+    }
+
+    /**
+     * 今日实时数据
+     *
+     * @return
+     */
+    public TodayDashboardVO getDashboard() {
+        LocalDate date = LocalDate.now();
+        long[] counts = orderStatusCounter.getTodayCounts();
+        return TodayDashboardVO.builder()
+                .date(date)
+                .businessData(getBusinessData(date, counts))
+                .orderOverView(getOrderOverView(counts))
+                .build();
+    }
+
+    /**
+     * 今日营业数据
+     *
+     * @return
+     */
+    public BusinessDataVO getBusinessData() {
+        return getBusinessData(LocalDate.now(), orderStatusCounter.getTodayCounts());
+    }
+
+    /**
+     * 今日各状态的订单数量
+     *
+     * @return
+     */
+    public OrderOverViewVO getOrderOverView() {
+        return getOrderOverView(orderStatusCounter.getTodayCounts());
+    }
+
+    private OrderOverViewVO getOrderOverView(long[] counts) {
+        return OrderOverViewVO.builder()
+                .waitingOrders((int) counts[Orders.TO_BE_CONFIRMED])
+                .deliveredOrders((int) counts[Orders.CONFIRMED])
+                .completedOrders((int) counts[Orders.COMPLETED])
+                .cancelledOrders((int) counts[Orders.CANCELLED])
+                .allOrders(OrderStatusCounter.sum(counts))
+                .build();
+    }
+
+    private BusinessDataVO getBusinessData(LocalDate date, long[] counts) {
+        String key = KEY_PREFIX + date;
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(key);
+        if (!fields.containsKey(RECONCILED_FIELD)) {
+            //跨天后或redis数据丢失时先与数据库对账
+            reconcile();
+            fields = stringRedisTemplate.opsForHash().entries(key);
+        }
+        double turnover = parseLong(fields.get(TURNOVER_FIELD)) / 100.0;
+        //有效订单即今日已完成的订单
+        int validOrderCount = (int) counts[Orders.COMPLETED];
+        int totalOrderCount = OrderStatusCounter.sum(counts);
+
+        Double unitPrice = 0.0;
+        Double orderCompletionRate = 0.0;
+        if (totalOrderCount != 0 && validOrderCount != 0) {
+            //订单完成率
+            orderCompletionRate = (double) validOrderCount / totalOrderCount;
+            //平均客单价
+            unitPrice = turnover / validOrderCount;
+        }
+
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers((int) parseLong(fields.get(NEW_USERS_FIELD)))
+                .build();
+    }
+
+    private void increment(String field, long delta) {
+        versionedHash.increment(KEY_PREFIX + LocalDate.now(), field, delta, TTL);
+    }
+
+    private long parseLong(Object value) {
+        return value == null ? 0 : Long.parseLong((String) value);
+    }
+
+    private boolean isToday(LocalDateTime time) {
+        return time != null && time.toLocalDate().equals(LocalDate.now());
+    }
+}
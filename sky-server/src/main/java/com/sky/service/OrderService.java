@@ -1,6 +1,7 @@
 package com.sky.service;
 
 import com.sky.dto.*;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
@@ -24,6 +25,16 @@ public interface OrderService {
      */
     PageResult pageQuery4User(int page, int pageSize, Integer status);
 
+    /**
+     * 用户端订单游标分页查询
+     * @param cursor 上一页返回的游标, 查询第一页时为空
+     * @param pageSize
+     * @param status
+     * @param withTotal 是否统计总记录数
+     * @return
+     */
+    CursorPageResult cursorQuery4User(String cursor, int pageSize, Integer status, boolean withTotal);
+
     void paySuccess(String outTradeNo);
 
     /**
@@ -53,6 +64,13 @@ public interface OrderService {
      */
     PageResult conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 条件搜索订单(游标分页)
+     * @param ordersCursorQueryDTO
+     * @return
+     */
+    CursorPageResult conditionSearchByCursor(OrdersCursorQueryDTO ordersCursorQueryDTO);
+
     /**
      * 各个状态的订单数量统计
      * @return
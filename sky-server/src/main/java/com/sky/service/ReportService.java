@@ -1,11 +1,14 @@
 package com.sky.service;
 
+import com.sky.vo.IntradayReportVO;
 import com.sky.vo.OrderReportVO;
+import com.sky.vo.ReportExportJobVO;
 import com.sky.vo.SalesTop10ReportVO;
 import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.time.LocalDate;
 
 public interface ReportService {
@@ -44,7 +47,70 @@ public interface ReportService {
 
     /**
      * 导出运营数据报表
+     * @param begin 开始日期, 为null时导出最近30天
+     * @param end 结束日期, 为null时为昨天
      * @param response
      */
-    void exportBusinessData(HttpServletResponse response);
+    void exportBusinessData(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException;
+
+    /**
+     * 提交运营数据报表异步导出任务
+     * @param begin
+     * @param end
+     * @return
+     */
+    ReportExportJobVO submitExportJob(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询导出任务的状态和进度
+     * @param jobId
+     * @return
+     */
+    ReportExportJobVO getExportJob(String jobId);
+
+    /**
+     * 下载导出任务生成的文件
+     * @param jobId
+     * @param response
+     */
+    void downloadExportJob(String jobId, HttpServletResponse response) throws IOException;
+
+    /**
+     * 按列格式(v2)输出营业额统计
+     * @param begin
+     * @param end
+     * @param response
+     */
+    void writeTurnoverStatisticsV2(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException;
+
+    /**
+     * 按列格式(v2)输出用户统计
+     * @param begin
+     * @param end
+     * @param response
+     */
+    void writeUserStatisticsV2(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException;
+
+    /**
+     * 按列格式(v2)输出订单统计
+     * @param begin
+     * @param end
+     * @param response
+     */
+    void writeOrderStatisticsV2(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException;
+
+    /**
+     * 按列格式(v2)输出销量排名top10
+     * @param begin
+     * @param end
+     * @param response
+     */
+    void writeSalesTop10V2(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException;
+
+    /**
+     * 统计某一天分时段(每15分钟)的订单数和营业额
+     * @param date
+     * @return
+     */
+    IntradayReportVO getIntradayStatistics(LocalDate date);
 }
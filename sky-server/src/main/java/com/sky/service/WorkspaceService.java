@@ -4,6 +4,7 @@ import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import com.sky.vo.TodayDashboardVO;
 import java.time.LocalDateTime;
 
 public interface WorkspaceService {
@@ -34,4 +35,10 @@ public interface WorkspaceService {
      */
     SetmealOverViewVO getSetmealOverView();
 
+    /**
+     * 查询工作台今日实时数据
+     * @return
+     */
+    TodayDashboardVO getTodayDashboard();
+
 }
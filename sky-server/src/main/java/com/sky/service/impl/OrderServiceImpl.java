@@ -1,6 +1,5 @@
 package com.sky.service.impl;
 
-import com.alibaba.fastjson.JSON;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.github.xiaoymin.knife4j.core.util.CollectionUtils;
@@ -11,37 +10,56 @@ import com.sky.entity.AddressBook;
 import com.sky.entity.OrderDetail;
 import com.sky.entity.Orders;
 import com.sky.entity.ShoppingCart;
+import com.sky.event.OrderStatusChangedEvent;
 import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.order.OrderDetailCache;
+import com.sky.order.OrderSearchIndex;
+import com.sky.order.OrderStateMachine;
+import com.sky.order.OrderStatusCounter;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.service.OrderService;
+import com.sky.utils.SnowflakeIdGenerator;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
-import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.MerchantNotification;
+import com.sky.websocket.MerchantNotificationBus;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.annotations.Select;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class OrderServiceImpl implements OrderService {
 
+    //游标分页默认和最大的每页记录数
+    private static final int DEFAULT_CURSOR_PAGE_SIZE = 10;
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    //游标格式: 下单时间(yyyyMMddHHmmss)_订单id
+    private static final String CURSOR_SEPARATOR = "_";
+    private static final DateTimeFormatter CURSOR_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
@@ -55,7 +73,19 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private WeChatPayUtil weChatPayUtil;
     @Autowired
-    private WebSocketServer webSocketServer;
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+    @Autowired
+    private MerchantNotificationBus merchantNotificationBus;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+    @Autowired
+    private OrderSearchIndex orderSearchIndex;
+    @Autowired
+    private OrderDetailCache orderDetailCache;
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
 
 //    @Value("${sky.shop.address}")
 //    private String shopAddress;
@@ -95,7 +125,7 @@ public class OrderServiceImpl implements OrderService {
         orders.setOrderTime(LocalDateTime.now());
         orders.setPayStatus(Orders.UN_PAID);
         orders.setStatus(Orders.PENDING_PAYMENT);
-        orders.setNumber(String.valueOf(System.currentTimeMillis()));//获取时间戳,在将数据类型转换为字符串类型
+        orders.setNumber(snowflakeIdGenerator.nextIdStr());//使用雪花算法生成订单号, 多个节点同一毫秒内下单也不会重复
         orders.setPhone(addressBook.getPhone());
         orders.setConsignee(addressBook.getConsignee());//收货人
         orders.setUserId(userId);
@@ -116,6 +146,9 @@ public class OrderServiceImpl implements OrderService {
         //当用户下单成功后, 清空当前用户的购物车数据
         shoppingCartMapper.deleteByUserId(userId);
 
+        //发布订单状态变更事件, 事务提交后更新订单状态计数
+        applicationEventPublisher.publishEvent(new OrderStatusChangedEvent(orders.getId(), null, Orders.PENDING_PAYMENT, orders));
+
         //封装VO返回结果
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
                 .id(orders.getId())
@@ -136,23 +169,19 @@ public class OrderServiceImpl implements OrderService {
         //根据订单id更新订单的状态, 支付方法时, 支付状态, 结账时间
         Orders orders = Orders.builder()
                 .id(ordersDB.getId())
-                .payStatus(Orders.TO_BE_CONFIRMED)
-                .status(Orders.PAID)
+                .status(Orders.TO_BE_CONFIRMED)
+                .payStatus(Orders.PAID)
                 .checkoutTime(LocalDateTime.now())
                 .build();
 
-        orderMapper.update(orders);
-
-        //通过webSocket向客户端浏览器中推送消息type orderId content封装到一个map中封装数据
-        Map map = new HashMap();
-        map.put("type", 1);//1表示来单提醒, 2表示客户催单
-        map.put("orderId", ordersDB.getId());
-        map.put("content", "订单号:"+outTradeNo);
-
-        String jsonString = JSON.toJSONString(map);//将map转换为json字符串
+        //只有待付款的订单才能修改为待接单, 重复的支付回调或者已经超时取消的订单不会再次修改, 也不会再次推送来单提醒
+        if (!Orders.PENDING_PAYMENT.equals(ordersDB.getStatus()) || !orderStateMachine.transit(orders, ordersDB)) {
+            log.warn("订单{}不是待付款状态, 忽略本次支付成功通知", outTradeNo);
+            return;
+        }
 
-        //将json字符串推送到页面中
-        webSocketServer.sendToAllClient(jsonString);
+        //来单提醒交给消息总线异步推送给商家端浏览器, 不阻塞支付回调
+        merchantNotificationBus.publish(MerchantNotification.newOrder(ordersDB.getId(), outTradeNo));
     }
 
     /**
@@ -178,11 +207,12 @@ public class OrderServiceImpl implements OrderService {
 
         // 查询出订单明细，并封装入OrderVO进行响应
         if (page != null && page.getTotal() > 0) {
-            for (Orders orders : page) {
-                Long orderId = orders.getId();// 订单id
+            // 一次查询出当前页所有订单的明细, 并按订单id分组
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(page.getResult());
 
-                // 查询订单明细
-                List<OrderDetail> orderDetails = orderDetailMapper.getByOrderId(orderId);
+            for (Orders orders : page) {
+                // 从分组结果中取出当前订单的明细
+                List<OrderDetail> orderDetails = orderDetailMap.getOrDefault(orders.getId(), Collections.emptyList());
 
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);
@@ -194,6 +224,38 @@ public class OrderServiceImpl implements OrderService {
         return new PageResult(page.getTotal(), list);
     }
 
+    /**
+     * 用户端订单游标分页查询
+     *
+     * @param cursor
+     * @param pageSize
+     * @param status
+     * @param withTotal
+     * @return
+     */
+    public CursorPageResult cursorQuery4User(String cursor, int pageSize, Integer status, boolean withTotal) {
+        OrdersCursorQueryDTO ordersCursorQueryDTO = new OrdersCursorQueryDTO();
+        ordersCursorQueryDTO.setUserId(BaseContext.getCurrentId());
+        ordersCursorQueryDTO.setStatus(status);
+        ordersCursorQueryDTO.setPageSize(pageSize);
+        ordersCursorQueryDTO.setCursor(cursor);
+        ordersCursorQueryDTO.setWithTotal(withTotal);
+
+        return cursorQuery(ordersCursorQueryDTO, ordersList -> {
+            // 一次查询出当前页所有订单的明细, 并按订单id分组
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersList);
+
+            List<OrderVO> list = new ArrayList<>();
+            for (Orders orders : ordersList) {
+                OrderVO orderVO = new OrderVO();
+                BeanUtils.copyProperties(orders, orderVO);
+                orderVO.setOrderDetailList(orderDetailMap.getOrDefault(orders.getId(), Collections.emptyList()));
+                list.add(orderVO);
+            }
+            return list;
+        });
+    }
+
     /**
      * 查询订单详情
      *
@@ -201,8 +263,22 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     public OrderVO details(Long id) {
+        // 优先从本地缓存获取, 已完成和已取消的订单不会再变化
+        return orderDetailCache.get(id, this::loadDetails);
+    }
+
+    /**
+     * 从数据库查询订单详情
+     *
+     * @param id
+     * @return
+     */
+    private OrderVO loadDetails(Long id) {
         // 根据id查询订单
         Orders orders = orderMapper.getById(id);
+        if (orders == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
 
         // 查询该订单对应的菜品/套餐明细
         List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
@@ -220,6 +296,7 @@ public class OrderServiceImpl implements OrderService {
      *
      * @param id
      */
+    @Transactional(rollbackFor = Exception.class)
     public void userCancelById(Long id) throws Exception {
         // 根据id查询订单
         Orders ordersDB = orderMapper.getById(id);
@@ -238,23 +315,29 @@ public class OrderServiceImpl implements OrderService {
         orders.setId(ordersDB.getId());
 
         // 订单处于待接单状态下取消，需要进行退款
-        if (ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            //调用微信支付退款接口
-            weChatPayUtil.refund(
-                    ordersDB.getNumber(), //商户订单号
-                    ordersDB.getNumber(), //商户退款单号
-                    new BigDecimal(0.01),//退款金额，单位 元
-                    new BigDecimal(0.01));//原订单金额
-
+        boolean needRefund = ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED);
+        if (needRefund) {
             //支付状态修改为 退款
             orders.setPayStatus(Orders.REFUND);
         }
 
-        // 更新订单状态、取消原因、取消时间
+        // 更新订单状态、取消原因、取消时间, 只有订单状态仍然是查询时的状态才能取消成功, 避免覆盖商家并发的接单操作
         orders.setStatus(Orders.CANCELLED);
         orders.setCancelReason("用户取消");
         orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+        if (!orderStateMachine.transit(orders, ordersDB)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+
+        // 取消成功后再退款, 退款失败时事务回滚, 订单保持原状态
+        if (needRefund) {
+            //调用微信支付退款接口
+            weChatPayUtil.refund(
+                    ordersDB.getNumber(), //商户订单号
+                    ordersDB.getNumber(), //商户退款单号
+                    new BigDecimal(0.01),//退款金额，单位 元
+                    new BigDecimal(0.01));//原订单金额
+        }
     }
 
     /**
@@ -292,6 +375,9 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     public PageResult conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO) {
+        // 订单号、手机号模糊搜索先通过索引得到候选订单
+        orderSearchIndex.resolve(ordersPageQueryDTO);
+
         PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
 
         Page<Orders> page = orderMapper.pageQuery(ordersPageQueryDTO);
@@ -302,17 +388,78 @@ public class OrderServiceImpl implements OrderService {
         return new PageResult(page.getTotal(), orderVOList);
     }
 
-    private List<OrderVO> getOrderVOList(Page<Orders> page) {
+    /**
+     * 条件搜索订单(游标分页)
+     *
+     * @param ordersCursorQueryDTO
+     * @return
+     */
+    public CursorPageResult conditionSearchByCursor(OrdersCursorQueryDTO ordersCursorQueryDTO) {
+        orderSearchIndex.resolve(ordersCursorQueryDTO);
+        return cursorQuery(ordersCursorQueryDTO, this::getOrderVOList);
+    }
+
+    /**
+     * 游标分页查询的公共逻辑
+     * 多查询一条记录用来判断是否还有下一页, 下一页的游标由当前页最后一条订单的下单时间和id组成;
+     * 只有请求中指定了withTotal才执行count查询
+     *
+     * @param ordersCursorQueryDTO
+     * @param converter            把当前页的订单转换为返回给前端的数据
+     * @return
+     */
+    private CursorPageResult cursorQuery(OrdersCursorQueryDTO ordersCursorQueryDTO, Function<List<Orders>, List<OrderVO>> converter) {
+        int pageSize = ordersCursorQueryDTO.getPageSize();
+        if (pageSize <= 0) {
+            pageSize = DEFAULT_CURSOR_PAGE_SIZE;
+        }
+        pageSize = Math.min(pageSize, MAX_CURSOR_PAGE_SIZE);
+
+        // 解析游标, 查询第一页时游标为空
+        LocalDateTime cursorTime = null;
+        Long cursorId = null;
+        String cursor = ordersCursorQueryDTO.getCursor();
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] parts = cursor.split(CURSOR_SEPARATOR);
+            try {
+                cursorTime = LocalDateTime.parse(parts[0], CURSOR_TIME_FORMATTER);
+                cursorId = Long.valueOf(parts[1]);
+            } catch (DateTimeParseException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new OrderBusinessException(MessageConstant.PAGE_CURSOR_INVALID);
+            }
+        }
+
+        List<Orders> ordersList = orderMapper.cursorQuery(ordersCursorQueryDTO, cursorTime, cursorId, pageSize + 1);
+
+        boolean hasMore = ordersList.size() > pageSize;
+        if (hasMore) {
+            ordersList = ordersList.subList(0, pageSize);
+        }
+
+        String nextCursor = null;
+        if (hasMore) {
+            Orders last = ordersList.get(ordersList.size() - 1);
+            nextCursor = last.getOrderTime().format(CURSOR_TIME_FORMATTER) + CURSOR_SEPARATOR + last.getId();
+        }
+
+        Long total = ordersCursorQueryDTO.isWithTotal() ? orderMapper.countByCondition(ordersCursorQueryDTO) : null;
+
+        return new CursorPageResult(converter.apply(ordersList), nextCursor, hasMore, total);
+    }
+
+    private List<OrderVO> getOrderVOList(List<Orders> ordersList) {
         // 需要返回订单菜品信息，自定义OrderVO响应结果
         List<OrderVO> orderVOList = new ArrayList<>();
 
-        List<Orders> ordersList = page.getResult();
         if (!CollectionUtils.isEmpty(ordersList)) {
+            // 一次查询出当前页所有订单的明细, 并按订单id分组
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersList);
+
             for (Orders orders : ordersList) {
                 // 将共同字段复制到OrderVO
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);
-                String orderDishes = getOrderDishesStr(orders);
+                String orderDishes = getOrderDishesStr(orderDetailMap.getOrDefault(orders.getId(), Collections.emptyList()));
 
                 // 将订单菜品信息封装到orderVO中，并添加到orderVOList
                 orderVO.setOrderDishes(orderDishes);
@@ -323,15 +470,28 @@ public class OrderServiceImpl implements OrderService {
     }
 
     /**
-     * 根据订单id获取菜品信息字符串
+     * 批量查询多个订单的明细, 只执行一次 order_id in (...) 查询, 再按订单id分组
      *
-     * @param orders
-     * @return
+     * @param ordersList
+     * @return key为订单id, value为该订单的明细
      */
-    private String getOrderDishesStr(Orders orders) {
-        // 查询订单菜品详情信息（订单中的菜品和数量）
-        List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
+    private Map<Long, List<OrderDetail>> getOrderDetailMap(List<Orders> ordersList) {
+        if (CollectionUtils.isEmpty(ordersList)) {
+            return Collections.emptyMap();
+        }
+
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        return orderDetailMapper.getByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderDetail::getOrderId));
+    }
 
+    /**
+     * 根据订单明细获取菜品信息字符串
+     *
+     * @param orderDetailList
+     * @return
+     */
+    private String getOrderDishesStr(List<OrderDetail> orderDetailList) {
         // 将每一条订单菜品信息拼接为字符串（格式：宫保鸡丁*3；）
         List<String> orderDishList = orderDetailList.stream().map(x -> {
             String orderDish = x.getName() + "*" + x.getNumber() + ";";
@@ -348,10 +508,11 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     public OrderStatisticsVO statistics() {
-        // 根据状态，分别查询出待接单、待派送、派送中的订单数量
-        Integer toBeConfirmed = orderMapper.countStatus(Orders.TO_BE_CONFIRMED);
-        Integer confirmed = orderMapper.countStatus(Orders.CONFIRMED);
-        Integer deliveryInProgress = orderMapper.countStatus(Orders.DELIVERY_IN_PROGRESS);
+        // 根据状态，分别从订单状态计数器中读取待接单、待派送、派送中的订单数量, 不再查询数据库
+        long[] counts = orderStatusCounter.getTotalCounts();
+        Integer toBeConfirmed = (int) counts[Orders.TO_BE_CONFIRMED];
+        Integer confirmed = (int) counts[Orders.CONFIRMED];
+        Integer deliveryInProgress = (int) counts[Orders.DELIVERY_IN_PROGRESS];
 
         // 将查询出的数据封装到orderStatisticsVO中响应
         OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
@@ -372,7 +533,10 @@ public class OrderServiceImpl implements OrderService {
                 .status(Orders.CONFIRMED)
                 .build();
 
-        orderMapper.update(orders);
+        // 订单只有存在且状态为2（待接单）才可以接单, 多个商家终端同时接单时只有一个能成功
+        if (!orderStateMachine.transit(orders)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
     }
 
     /**
@@ -380,8 +544,9 @@ public class OrderServiceImpl implements OrderService {
      *
      * @param ordersRejectionDTO
      */
+    @Transactional(rollbackFor = Exception.class)
     public void rejection(OrdersRejectionDTO ordersRejectionDTO) throws Exception {
-        // 根据id查询订单
+        // 根据id查询订单, 退款时需要使用订单号和支付状态
         Orders ordersDB = orderMapper.getById(ordersRejectionDTO.getId());
 
         // 订单只有存在且状态为2（待接单）才可以拒单
@@ -389,6 +554,17 @@ public class OrderServiceImpl implements OrderService {
             throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
         }
 
+        // 拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间, 状态已被其他操作修改时拒单失败
+        Orders orders = new Orders();
+        orders.setId(ordersDB.getId());
+        orders.setStatus(Orders.CANCELLED);
+        orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
+        orders.setCancelTime(LocalDateTime.now());
+
+        if (!orderStateMachine.transit(orders, ordersDB)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+
         //支付状态
         Integer payStatus = ordersDB.getPayStatus();
         if (payStatus == Orders.PAID) {
@@ -400,15 +576,6 @@ public class OrderServiceImpl implements OrderService {
                     new BigDecimal(0.01));
             log.info("申请退款：{}", refund);
         }
-
-        // 拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        orders.setStatus(Orders.CANCELLED);
-        orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
-        orders.setCancelTime(LocalDateTime.now());
-
-        orderMapper.update(orders);
     }
 
     /**
@@ -416,9 +583,24 @@ public class OrderServiceImpl implements OrderService {
      *
      * @param ordersCancelDTO
      */
+    @Transactional(rollbackFor = Exception.class)
     public void cancel(OrdersCancelDTO ordersCancelDTO) throws Exception {
-        // 根据id查询订单
+        // 根据id查询订单, 退款时需要使用订单号和支付状态
         Orders ordersDB = orderMapper.getById(ordersCancelDTO.getId());
+        if (ordersDB == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+
+        // 管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间, 状态已被其他操作修改时取消失败
+        Orders orders = new Orders();
+        orders.setId(ordersCancelDTO.getId());
+        orders.setStatus(Orders.CANCELLED);
+        orders.setCancelReason(ordersCancelDTO.getCancelReason());
+        orders.setCancelTime(LocalDateTime.now());
+
+        if (!orderStateMachine.transit(orders, ordersDB)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
 
         //支付状态
         Integer payStatus = ordersDB.getPayStatus();
@@ -431,14 +613,6 @@ public class OrderServiceImpl implements OrderService {
                     new BigDecimal(0.01));
             log.info("申请退款：{}", refund);
         }
-
-        // 管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
-        Orders orders = new Orders();
-        orders.setId(ordersCancelDTO.getId());
-        orders.setStatus(Orders.CANCELLED);
-        orders.setCancelReason(ordersCancelDTO.getCancelReason());
-        orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
     }
 
     /**
@@ -447,20 +621,15 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      */
     public void delivery(Long id) {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(id);
-
-        // 校验订单是否存在，并且状态为3
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.CONFIRMED)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
         Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
+        orders.setId(id);
         // 更新订单状态,状态转为派送中
         orders.setStatus(Orders.DELIVERY_IN_PROGRESS);
 
-        orderMapper.update(orders);
+        // 校验订单是否存在，并且状态为3, 和修改在同一条sql中完成
+        if (!orderStateMachine.transit(orders)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
     }
 
     /**
@@ -469,21 +638,16 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      */
     public void complete(Long id) {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(id);
-
-        // 校验订单是否存在，并且状态为4
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.DELIVERY_IN_PROGRESS)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
         Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
+        orders.setId(id);
         // 更新订单状态,状态转为完成
         orders.setStatus(Orders.COMPLETED);
         orders.setDeliveryTime(LocalDateTime.now());
 
-        orderMapper.update(orders);
+        // 校验订单是否存在，并且状态为4, 和修改在同一条sql中完成
+        if (!orderStateMachine.transit(orders)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
     }
 
     /**
@@ -500,14 +664,8 @@ public class OrderServiceImpl implements OrderService {
             throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
         }
 
-        //通过webSocket推送消息
-        Map map = new HashMap();
-        map.put("type", 2);//1.表示来单提醒 2.表示客户催单
-        map.put("orderId", id);
-        map.put("content", "订单号:"+ordersDB.getNumber());
-
-        //通过webSocket向客户端浏览器中推送消息
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        //催单消息交给消息总线异步推送给商家端浏览器
+        merchantNotificationBus.publish(MerchantNotification.reminder(id, ordersDB.getNumber()));
     }
 
 
@@ -5,6 +5,7 @@ import com.alibaba.fastjson.JSONObject;
 import com.sky.constant.MessageConstant;
 import com.sky.dto.UserLoginDTO;
 import com.sky.entity.User;
+import com.sky.event.UserRegisteredEvent;
 import com.sky.exception.LoginFailedException;
 import com.sky.mapper.UserMapper;
 import com.sky.properties.WeChatProperties;
@@ -14,6 +15,7 @@ import io.swagger.util.Json;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.xmlbeans.impl.xb.xsdschema.Attribute;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -31,6 +33,9 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
 
     //微信服务接口地址, 可以获取openid
     public static final String WX_LOGIN = "https://api.weixin.qq.com/sns/jscode2session";
@@ -82,6 +87,9 @@ public class UserServiceImpl implements UserService {
                     .createTime(LocalDateTime.now())
                     .build();
             userMapper.insert(user);
+
+            //发布新用户注册事件, 更新每日营业数据汇总
+            applicationEventPublisher.publishEvent(new UserRegisteredEvent(user.getId(), user.getCreateTime()));
         }
 
         /*@Override
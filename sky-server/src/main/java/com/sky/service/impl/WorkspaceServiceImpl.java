@@ -6,17 +6,24 @@ import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.report.BusinessDayStats;
+import com.sky.report.ParallelQueryExecutor;
+import com.sky.report.ReportEngine;
+import com.sky.report.TodayBusinessAccumulator;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import com.sky.vo.TodayDashboardVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -31,6 +38,12 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private ReportEngine reportEngine;
+    @Autowired
+    private ParallelQueryExecutor parallelQueryExecutor;
+    @Autowired
+    private TodayBusinessAccumulator todayBusinessAccumulator;
 
     /**
      * 根据时间段统计营业数据
@@ -47,20 +60,40 @@ public class WorkspaceServiceImpl implements WorkspaceService {
          * 新增用户：当日新增用户的数量
          */
 
+        //按整天统计时直接使用报表引擎, 今天之前的日期从每日营业数据汇总表中读取, 只统计今天时直接读取内存中的今日数据
+        if (begin.toLocalTime().equals(LocalTime.MIN) && end.toLocalTime().equals(LocalTime.MAX)) {
+            LocalDate today = LocalDate.now();
+            if (begin.toLocalDate().equals(today) && end.toLocalDate().equals(today)) {
+                return todayBusinessAccumulator.getBusinessData();
+            }
+            return getBusinessData(reportEngine.getDailyStats(begin.toLocalDate(), end.toLocalDate()));
+        }
+
+        //总订单数、营业额、有效订单数、新增用户数四个查询互相独立, 并行执行
         Map map = new HashMap();
         map.put("begin",begin);
         map.put("end",end);
 
-        //查询总订单数
-        Integer totalOrderCount = orderMapper.countByMap(map);
+        Map validMap = new HashMap(map);
+        validMap.put("status", Orders.COMPLETED);
 
-        map.put("status", Orders.COMPLETED);
+        //查询总订单数
+        ParallelQueryExecutor.Query<Integer> totalOrderCountQuery =
+                parallelQueryExecutor.submit("totalOrderCount", () -> orderMapper.countByMap(map), 0);
         //营业额
-        Double turnover = orderMapper.sumByMap(map);
-        turnover = turnover == null? 0.0 : turnover;
-
+        ParallelQueryExecutor.Query<Double> turnoverQuery =
+                parallelQueryExecutor.submit("turnover", () -> orderMapper.sumByMap(validMap), 0.0);
         //有效订单数
-        Integer validOrderCount = orderMapper.countByMap(map);
+        ParallelQueryExecutor.Query<Integer> validOrderCountQuery =
+                parallelQueryExecutor.submit("validOrderCount", () -> orderMapper.countByMap(validMap), 0);
+        //新增用户数
+        ParallelQueryExecutor.Query<Integer> newUsersQuery =
+                parallelQueryExecutor.submit("newUsers", () -> userMapper.countByMap(map), 0);
+
+        Integer totalOrderCount = totalOrderCountQuery.get();
+        Double turnover = turnoverQuery.get();
+        Integer validOrderCount = validOrderCountQuery.get();
+        Integer newUsers = newUsersQuery.get();
 
         Double unitPrice = 0.0;
 
@@ -72,55 +105,61 @@ public class WorkspaceServiceImpl implements WorkspaceService {
             unitPrice = turnover / validOrderCount;
         }
 
-        //新增用户数
-        Integer newUsers = userMapper.countByMap(map);
-
         return BusinessDataVO.builder()
                 .turnover(turnover)
                 .validOrderCount(validOrderCount)
                 .orderCompletionRate(orderCompletionRate)
                 .unitPrice(unitPrice)
                 .newUsers(newUsers)
+                .degraded(ParallelQueryExecutor.degraded(totalOrderCountQuery, turnoverQuery, validOrderCountQuery, newUsersQuery))
                 .build();
     }
 
 
+    /**
+     * 汇总多天的营业数据
+     *
+     * @param statsList
+     * @return
+     */
+    private BusinessDataVO getBusinessData(List<BusinessDayStats> statsList) {
+        double turnover = 0.0;
+        int totalOrderCount = 0;
+        int validOrderCount = 0;
+        int newUsers = 0;
+        for (BusinessDayStats stats : statsList) {
+            turnover += stats.getTurnover();
+            totalOrderCount += stats.getOrderCount();
+            validOrderCount += stats.getValidOrderCount();
+            newUsers += stats.getNewUsers();
+        }
+
+        Double unitPrice = 0.0;
+        Double orderCompletionRate = 0.0;
+        if (totalOrderCount != 0 && validOrderCount != 0) {
+            //订单完成率
+            orderCompletionRate = (double) validOrderCount / totalOrderCount;
+            //平均客单价
+            unitPrice = turnover / validOrderCount;
+        }
+
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(newUsers)
+                .build();
+    }
+
     /**
      * 查询订单管理数据
      *
      * @return
      */
     public OrderOverViewVO getOrderOverView() {
-        Map map = new HashMap();
-        map.put("begin", LocalDateTime.now().with(LocalTime.MIN));
-        map.put("status", Orders.TO_BE_CONFIRMED);
-
-        //待接单
-        Integer waitingOrders = orderMapper.countByMap(map);
-
-        //待派送
-        map.put("status", Orders.CONFIRMED);
-        Integer deliveredOrders = orderMapper.countByMap(map);
-
-        //已完成
-        map.put("status", Orders.COMPLETED);
-        Integer completedOrders = orderMapper.countByMap(map);
-
-        //已取消
-        map.put("status", Orders.CANCELLED);
-        Integer cancelledOrders = orderMapper.countByMap(map);
-
-        //全部订单
-        map.put("status", null);
-        Integer allOrders = orderMapper.countByMap(map);
-
-        return OrderOverViewVO.builder()
-                .waitingOrders(waitingOrders)
-                .deliveredOrders(deliveredOrders)
-                .completedOrders(completedOrders)
-                .cancelledOrders(cancelledOrders)
-                .allOrders(allOrders)
-                .build();
+        //今日订单各状态的数量直接从订单状态计数器中读取, 不再查询数据库
+        return todayBusinessAccumulator.getOrderOverView();
     }
 
     /**
@@ -129,16 +168,20 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public DishOverViewVO getDishOverView() {
-        Map map = new HashMap();
-        map.put("status", StatusConstant.ENABLE);
-        Integer sold = dishMapper.countByMap(map);
+        Map soldMap = new HashMap();
+        soldMap.put("status", StatusConstant.ENABLE);
+        ParallelQueryExecutor.Query<Integer> soldQuery =
+                parallelQueryExecutor.submit("dishSold", () -> dishMapper.countByMap(soldMap), 0);
 
-        map.put("status", StatusConstant.DISABLE);
-        Integer discontinued = dishMapper.countByMap(map);
+        Map discontinuedMap = new HashMap();
+        discontinuedMap.put("status", StatusConstant.DISABLE);
+        ParallelQueryExecutor.Query<Integer> discontinuedQuery =
+                parallelQueryExecutor.submit("dishDiscontinued", () -> dishMapper.countByMap(discontinuedMap), 0);
 
         return DishOverViewVO.builder()
-                .sold(sold)
-                .discontinued(discontinued)
+                .sold(soldQuery.get())
+                .discontinued(discontinuedQuery.get())
+                .degraded(ParallelQueryExecutor.degraded(soldQuery, discontinuedQuery))
                 .build();
     }
 
@@ -148,16 +191,29 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public SetmealOverViewVO getSetmealOverView() {
-        Map map = new HashMap();
-        map.put("status", StatusConstant.ENABLE);
-            Integer sold = setmealMapper.countByMap(map);
+        Map soldMap = new HashMap();
+        soldMap.put("status", StatusConstant.ENABLE);
+        ParallelQueryExecutor.Query<Integer> soldQuery =
+                parallelQueryExecutor.submit("setmealSold", () -> setmealMapper.countByMap(soldMap), 0);
 
-        map.put("status", StatusConstant.DISABLE);
-        Integer discontinued = setmealMapper.countByMap(map);
+        Map discontinuedMap = new HashMap();
+        discontinuedMap.put("status", StatusConstant.DISABLE);
+        ParallelQueryExecutor.Query<Integer> discontinuedQuery =
+                parallelQueryExecutor.submit("setmealDiscontinued", () -> setmealMapper.countByMap(discontinuedMap), 0);
 
         return SetmealOverViewVO.builder()
-                .sold(sold)
-                .discontinued(discontinued)
+                .sold(soldQuery.get())
+                .discontinued(discontinuedQuery.get())
+                .degraded(ParallelQueryExecutor.degraded(soldQuery, discontinuedQuery))
                 .build();
     }
+
+    /**
+     * 查询工作台今日实时数据
+     *
+     * @return
+     */
+    public TodayDashboardVO getTodayDashboard() {
+        return todayBusinessAccumulator.getDashboard();
+    }
 }
@@ -1,67 +1,64 @@
 package com.sky.task;
 
 import com.sky.entity.Orders;
-import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderStateMachine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.List;
 
 /**
  * 定时任务类, 定时处理订单状态
+ * 满足条件的订单不再逐条查询后逐条修改, 而是按id分批, 每批通过一条update语句修改, 每次执行都有时间上限, 积压的订单留到下一次执行时继续处理
  */
 @Component
 @Slf4j
 public class OrderTask {
 
+    //每批修改的订单数量
+    private static final int CHUNK_SIZE = 500;
+
+    //每次执行的时间上限(毫秒), 保证在下一次触发之前执行完成
+    private static final long TIME_BUDGET_MILLIS = 30 * 1000;
+
     @Autowired
-    private OrderMapper orderMapper;
+    private OrderStateMachine orderStateMachine;
 
     /**
      * 处理超时订单的方法
+     * 待付款订单的超时取消已经由OrderPaymentTimeoutScheduler的时间轮按订单精确处理, 这里只作为兜底, 处理节点宕机等情况下遗漏的订单
      */
-//    @Scheduled(cron = "0 * * * * ?")//每分钟触发一次
+    @Scheduled(cron = "0 0/30 * * * ?")//每30分钟触发一次
     public void procesTimeOutOrder() {
-        log.info("定时处理超时订单:{}", LocalDateTime.now());
-        // select * from orders where status = ? and order_time(下单时间) < (当前时间 - 15)
-
-        //LocalDateTime.now().plusMinutes(15);//当前时间 + 15分钟
-        //LocalDateTime.now().minusMinutes(15);//当前时间 - 15分钟
+        LocalDateTime now = LocalDateTime.now();
+        log.info("定时处理超时订单:{}", now);
+        long start = System.currentTimeMillis();
 
-        /*
-        将订单状态为待付款的订单, 并且下单时间小于当前时间减去15分钟的订单查询出来,后通过循环遍历的方式修改订单状态为已取消
-        List<Orders> orderList = orderMapper.getByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, LocalDateTime.now().minusMinutes(15));
-        if (orderList != null && orderList.size()>0){
-            for (Orders orders : orderList) {
-                orders.setStatus(Orders.CANCELLED);
-                orders.setCancelReason("订单超时自动取消");
-                orders.setCancelTime(LocalDateTime.now());
-                orderMapper.update(orders);
-            }
-        }*/
+        // update orders set status = 6 ... where status = 1 and order_time(下单时间) < (当前时间 - 15) and id > ? limit ?
+        Orders orders = Orders.builder()
+                .status(Orders.CANCELLED)
+                .cancelReason("订单超时自动取消")
+                .cancelTime(now)
+                .build();
+        int count = orderStateMachine.transitBatch(orders, Orders.PENDING_PAYMENT, now.minusMinutes(15), CHUNK_SIZE, TIME_BUDGET_MILLIS);
 
-        orderMapper.getByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, LocalDateTime.now().minusMinutes(15))
-                .forEach(order -> {
-                    //修改订单状态为已取消
-                    order.setStatus(Orders.CANCELLED);
-                    order.setCancelReason("订单超时自动取消");
-                    order.setCancelTime(LocalDateTime.now());
-                    orderMapper.update(order);
-                });
+        log.info("超时订单处理完成, 共取消{}个订单, 耗时{}ms", count, System.currentTimeMillis() - start);
     }
 
-//    @Scheduled(cron = "0 0 1 * * ?")//每天凌晨一点触发一次
+    @Scheduled(cron = "0 0 1 * * ?")//每天凌晨一点触发一次
     public void processDeliveryOrder(){
-        log.info("定时处理派送中的订单:{}", LocalDateTime.now());
-        //查询出所有派送中的订单, 并且订单的派送时间小于当前时间减去1小时的订单, 然后将订单状态修改为已完成
-        orderMapper.getByStatusAndOrderTimeLT(Orders.DELIVERY_IN_PROGRESS, LocalDateTime.now().minusHours(1))
-                .forEach(order -> {
-                    order.setStatus(Orders.COMPLETED);
-                    orderMapper.update(order);
-                });
+        LocalDateTime now = LocalDateTime.now();
+        log.info("定时处理派送中的订单:{}", now);
+        long start = System.currentTimeMillis();
+
+        //将派送中并且下单时间早于当前时间减去1小时的订单, 修改为已完成
+        Orders orders = Orders.builder()
+                .status(Orders.COMPLETED)
+                .build();
+        int count = orderStateMachine.transitBatch(orders, Orders.DELIVERY_IN_PROGRESS, now.minusHours(1), CHUNK_SIZE, TIME_BUDGET_MILLIS);
+
+        log.info("派送中订单处理完成, 共完成{}个订单, 耗时{}ms", count, System.currentTimeMillis() - start);
     }
 }
@@ -0,0 +1,103 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.vo.TodayDashboardVO;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 推送给商家端浏览器的消息
+ */
+@Getter
+@ToString
+public class MerchantNotification {
+
+    //消息类型 1来单提醒 2客户催单 3工作台今日数据
+    public static final Integer NEW_ORDER = 1;
+    public static final Integer REMINDER = 2;
+    public static final Integer DASHBOARD = 3;
+
+    private final Integer type;
+    private final Long orderId;
+    private final String content;
+    //消息携带的数据, 只有工作台今日数据消息才有
+    private final Object data;
+
+    //发布时间(System.nanoTime), 用于统计从发布到推送完成的耗时
+    private final long publishedNanos = System.nanoTime();
+
+    private MerchantNotification(Integer type, Long orderId, String content) {
+        this(type, orderId, content, null);
+    }
+
+    private MerchantNotification(Integer type, Long orderId, String content, Object data) {
+        this.type = type;
+        this.orderId = orderId;
+        this.content = content;
+        this.data = data;
+    }
+
+    /**
+     * 来单提醒
+     *
+     * @param orderId
+     * @param number  订单号
+     * @return
+     */
+    public static MerchantNotification newOrder(Long orderId, String number) {
+        return new MerchantNotification(NEW_ORDER, orderId, "订单号:" + number);
+    }
+
+    /**
+     * 客户催单
+     *
+     * @param orderId
+     * @param number  订单号
+     * @return
+     */
+    public static MerchantNotification reminder(Long orderId, String number) {
+        return new MerchantNotification(REMINDER, orderId, "订单号:" + number);
+    }
+
+    /**
+     * 工作台今日数据
+     *
+     * @param dashboard
+     * @return
+     */
+    public static MerchantNotification dashboard(TodayDashboardVO dashboard) {
+        return new MerchantNotification(DASHBOARD, null, "工作台今日数据", dashboard);
+    }
+
+    /**
+     * 从其他节点广播的json还原消息
+     *
+     * @param json toJson的结果
+     * @return
+     */
+    public static MerchantNotification fromJson(String json) {
+        JSONObject object = JSON.parseObject(json);
+        return new MerchantNotification(object.getInteger("type"), object.getLong("orderId"),
+                object.getString("content"), object.get("data"));
+    }
+
+    /**
+     * 转换为前端约定的json格式: {"type":1,"orderId":1,"content":"订单号:xxx"}, 携带数据时增加data字段
+     *
+     * @return
+     */
+    public String toJson() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", type);
+        map.put("orderId", orderId);
+        map.put("content", content);
+        if (data != null) {
+            map.put("data", data);
+        }
+        return JSON.toJSONString(map);
+    }
+}
@@ -0,0 +1,175 @@
+package com.sky.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商家端消息推送总线
+ * 业务代码只负责发布消息(有事务时在事务提交后才放入队列), 由单独的推送线程从有界队列中成批取出消息并通过WebSocket推送给商家端浏览器,
+ * 某个商家浏览器网络缓慢时只会拖慢推送线程, 不会阻塞微信支付回调等请求线程; 队列已满时丢弃新消息并记录到监控指标中。
+ * 只在一个节点上产生、需要推送给所有节点上商家端的消息(如工作台今日数据)通过broadcast经redis的发布订阅发送到每个节点的队列
+ */
+@Component
+@Slf4j
+public class MerchantNotificationBus implements MessageListener {
+
+    //广播消息的频道
+    public static final String CHANNEL = "sky:merchant:notification";
+
+    //队列容量
+    private static final int QUEUE_CAPACITY = 1024;
+    //每批最多推送的消息数量
+    private static final int MAX_BATCH_SIZE = 32;
+
+    @Autowired
+    private WebSocketServer webSocketServer;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final BlockingQueue<MerchantNotification> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private Counter publishedCounter;
+    private Counter droppedCounter;
+    private Counter failedCounter;
+    private Timer latencyTimer;
+
+    private Thread dispatcher;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+        publishedCounter = Counter.builder("merchant.notification.published")
+                .description("发布的商家端消息数量").register(meterRegistry);
+        droppedCounter = Counter.builder("merchant.notification.dropped")
+                .description("队列已满被丢弃的商家端消息数量").register(meterRegistry);
+        failedCounter = Counter.builder("merchant.notification.failed")
+                .description("商家端消息推送失败的次数, 每个推送失败的连接计一次").register(meterRegistry);
+        latencyTimer = Timer.builder("merchant.notification.latency")
+                .description("商家端消息从发布到推送完成的耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        meterRegistry.gauge("merchant.notification.queue.size", queue, BlockingQueue::size);
+
+        dispatcher = new Thread(this::dispatch, "merchant-notification-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        dispatcher.interrupt();
+    }
+
+    /**
+     * 发布消息, 当前存在事务时在事务提交后才放入队列, 事务回滚则不推送
+     *
+     * @param notification
+     */
+    public void publish(MerchantNotification notification) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(notification);
+                }
+            });
+        } else {
+            enqueue(notification);
+        }
+    }
+
+    /**
+     * 广播消息, 每个节点(包括本节点)收到后推送给各自连接的商家端
+     *
+     * @param notification
+     */
+    public void broadcast(MerchantNotification notification) {
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, notification.toJson());
+        } catch (Exception e) {
+            //redis不可用时至少推送给本节点的商家端
+            log.error("广播商家端消息失败, 只推送本节点:{}", notification, e);
+            publish(notification);
+        }
+    }
+
+    /**
+     * 收到广播的消息
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        enqueue(MerchantNotification.fromJson(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+
+    private void enqueue(MerchantNotification notification) {
+        publishedCounter.increment();
+        if (!queue.offer(notification)) {
+            droppedCounter.increment();
+            log.warn("商家端消息队列已满, 丢弃消息:{}", notification);
+        }
+    }
+
+    /**
+     * 推送线程: 等待队列中的消息, 每次取出一批依次推送
+     */
+    private void dispatch() {
+        List<MerchantNotification> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                MerchantNotification first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                for (MerchantNotification notification : batch) {
+                    deliver(notification);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void deliver(MerchantNotification notification) {
+        try {
+            int failed = webSocketServer.sendToAllClient(notification.toJson());
+            if (failed > 0) {
+                failedCounter.increment(failed);
+                log.warn("商家端消息推送失败, 失败的连接数量:{}, 消息:{}", failed, notification);
+            }
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.error("商家端消息推送失败:{}", notification, e);
+        }
+        latencyTimer.record(System.nanoTime() - notification.getPublishedNanos(), TimeUnit.NANOSECONDS);
+    }
+}
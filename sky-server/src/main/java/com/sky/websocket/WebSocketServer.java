@@ -9,8 +9,8 @@ import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * WebSocket服务
@@ -19,8 +19,8 @@ import java.util.Map;
 @ServerEndpoint("/ws/{sid}")//根据路径进行匹配将客户端与服务端进行连接
 public class WebSocketServer {
 
-    //存放会话对象, 这里使用一个双例集合hashmap当作容器
-    private static Map<String, Session> sessionMap = new HashMap();
+    //存放会话对象, 连接的建立、断开和消息推送在不同的线程中执行, 使用线程安全的ConcurrentHashMap当作容器
+    private static Map<String, Session> sessionMap = new ConcurrentHashMap<>();
 
     /**
      * 连接建立成功调用的方法
@@ -53,20 +53,33 @@ public class WebSocketServer {
     }
 
     /**
-     * 群发
+     * 当前连接的客户端数量
+     *
+     * @return
+     */
+    public int getSessionCount() {
+        return sessionMap.size();
+    }
+
+    /**
+     * 群发, 某个客户端发送失败时继续发送其他客户端
      *
      * @param message
+     * @return 发送失败的客户端数量
      */
-    public void sendToAllClient(String message) {
+    public int sendToAllClient(String message) {
+        int failed = 0;
         Collection<Session> sessions = sessionMap.values();
         for (Session session : sessions) {
             try {
                 //服务器向客户端发送消息
                 session.getBasicRemote().sendText(message);
             } catch (Exception e) {
+                failed++;
                 e.printStackTrace();
             }
         }
+        return failed;
     }
 
 }
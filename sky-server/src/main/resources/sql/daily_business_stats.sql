@@ -0,0 +1,17 @@
+-- 每日营业数据汇总表
+-- 按下单日期汇总订单数据, 按注册日期汇总用户数据; 订单状态变更、用户注册时增量更新, 每天凌晨重新计算最近几天的数据进行对账
+create table if not exists daily_business_stats
+(
+    date                       date           not null comment '日期' primary key,
+    turnover                   decimal(12, 2) not null default 0 comment '营业额(已完成订单金额合计)',
+    order_count                int            not null default 0 comment '订单总数',
+    valid_order_count          int            not null default 0 comment '有效订单数(已完成)',
+    pending_payment_count      int            not null default 0 comment '待付款订单数',
+    to_be_confirmed_count      int            not null default 0 comment '待接单订单数',
+    confirmed_count            int            not null default 0 comment '已接单订单数',
+    delivery_in_progress_count int            not null default 0 comment '派送中订单数',
+    cancelled_count            int            not null default 0 comment '已取消订单数',
+    new_users                  int            not null default 0 comment '新增用户数',
+    total_users                int            not null default 0 comment '截止当天的用户总数',
+    update_time                datetime       null comment '更新时间'
+) comment '每日营业数据汇总';
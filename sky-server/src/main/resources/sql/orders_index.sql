@@ -0,0 +1,5 @@
+-- orders表游标分页使用的索引, 项目启动时由SchemaInitializer检查并创建缺少的索引
+-- 管理端订单搜索: order by order_time desc, id desc 直接按索引顺序读取, 不需要filesort
+alter table orders add index idx_orders_order_time_id (order_time, id);
+-- 用户端历史订单: where user_id = ? order by order_time desc, id desc
+alter table orders add index idx_orders_user_id_order_time_id (user_id, order_time, id);
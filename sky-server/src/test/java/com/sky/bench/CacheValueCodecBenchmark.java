@@ -0,0 +1,102 @@
+package com.sky.bench;
+
+import com.sky.cache.CacheValueCodec;
+import com.sky.entity.DishFlavor;
+import com.sky.vo.DishVO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存数据编码基准测试: CacheValueCodec(json + LZ4) vs JDK序列化
+ * 数据为按分类查询的菜品列表(每个菜品2个口味), 与菜品缓存中保存的内容相同; 压缩阈值与RedisConfiguration一致;
+ * 编码后的字节数在setUp中输出
+ * 运行方式: mvn -pl sky-server -am test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sky.bench.CacheValueCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheValueCodecBenchmark {
+
+    //一个分类下的菜品数量
+    @Param({"5", "20", "100"})
+    public int dishCount;
+
+    private final CacheValueCodec codec = new CacheValueCodec(1024);
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    private List<DishVO> dishes;
+    private byte[] codecBytes;
+    private byte[] jdkBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dishes = new ArrayList<>(dishCount);
+        for (long i = 1; i <= dishCount; i++) {
+            List<DishFlavor> flavors = new ArrayList<>();
+            flavors.add(DishFlavor.builder().id(i * 10).dishId(i).name("辣度").value("[\"不辣\",\"微辣\",\"中辣\",\"重辣\"]").build());
+            flavors.add(DishFlavor.builder().id(i * 10 + 1).dishId(i).name("忌口").value("[\"不要葱\",\"不要蒜\",\"不要香菜\"]").build());
+            dishes.add(DishVO.builder()
+                    .id(i)
+                    .name("菜品" + i)
+                    .categoryId(11L)
+                    .price(new BigDecimal("38.00"))
+                    .image("https://sky-take-out.oss-cn-beijing.aliyuncs.com/" + i + ".png")
+                    .description("精选食材现点现做的招牌菜品" + i)
+                    .status(1)
+                    .updateTime(LocalDateTime.of(2024, 1, 1, 12, 0))
+                    .categoryName("川菜")
+                    .flavors(flavors)
+                    .build());
+        }
+        codecBytes = codec.serialize(dishes);
+        jdkBytes = jdkSerializer.serialize(dishes);
+        System.out.println("codec: " + codecBytes.length + " bytes, jdk: " + jdkBytes.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] codecSerialize() {
+        return codec.serialize(dishes);
+    }
+
+    @Benchmark
+    public byte[] jdkSerialize() {
+        return jdkSerializer.serialize(dishes);
+    }
+
+    @Benchmark
+    public Object codecDeserialize() {
+        return codec.deserialize(codecBytes);
+    }
+
+    @Benchmark
+    public Object jdkDeserialize() {
+        return jdkSerializer.deserialize(jdkBytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CacheValueCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
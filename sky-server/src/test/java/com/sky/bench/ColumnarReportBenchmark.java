@@ -0,0 +1,118 @@
+package com.sky.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sky.json.JacksonObjectMapper;
+import com.sky.report.BusinessDayStats;
+import com.sky.report.ColumnarReportWriter;
+import com.sky.report.ReportEngine;
+import com.sky.result.Result;
+import com.sky.service.impl.ReportServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 报表接口基准测试: 按列格式(v2) vs 逗号拼接字符串(v1)
+ * 两条路径都从报表引擎返回的每日营业数据开始, 到写完统一返回结果的json为止:
+ * v1为ReportServiceImpl组装VO后由与消息转换器相同的JacksonObjectMapper序列化, v2为ReportServiceImpl直接流式写入响应;
+ * 报表引擎替换为直接返回生成好的数据, 不包含数据库和缓存的耗时
+ * 运行方式: mvn -pl sky-server -am test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sky.bench.ColumnarReportBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnarReportBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new JacksonObjectMapper();
+
+    //报表的天数
+    @Param({"30", "365"})
+    public int days;
+
+    private ReportServiceImpl reportService;
+    private LocalDate begin;
+    private LocalDate end;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        end = LocalDate.now().minusDays(1);
+        begin = end.minusDays(days - 1);
+        Random random = new Random(42);
+        List<BusinessDayStats> statsList = new ArrayList<>(days);
+        int totalUsers = 10000;
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            int orderCount = 200 + random.nextInt(300);
+            int newUsers = random.nextInt(50);
+            totalUsers += newUsers;
+            statsList.add(new BusinessDayStats(date, random.nextInt(2000000) / 100.0, orderCount,
+                    orderCount - random.nextInt(20), newUsers, totalUsers));
+        }
+
+        ReportEngine reportEngine = new ReportEngine() {
+            @Override
+            public List<BusinessDayStats> getDailyStats(LocalDate begin, LocalDate end) {
+                return statsList;
+            }
+        };
+        reportService = new ReportServiceImpl();
+        ReflectionTestUtils.setField(reportService, "reportEngine", reportEngine);
+        ReflectionTestUtils.setField(reportService, "columnarReportWriter", new ColumnarReportWriter());
+    }
+
+    @Benchmark
+    public byte[] turnoverV1() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OBJECT_MAPPER.writeValue(outputStream, Result.success(reportService.getTrunoverStatistics(begin, end)));
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] turnoverV2() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        reportService.writeTurnoverStatisticsV2(begin, end, response);
+        return response.getContentAsByteArray();
+    }
+
+    @Benchmark
+    public byte[] ordersV1() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        OBJECT_MAPPER.writeValue(outputStream, Result.success(reportService.getOrderStatistics(begin, end)));
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] ordersV2() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        reportService.writeOrderStatisticsV2(begin, end, response);
+        return response.getContentAsByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ColumnarReportBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,124 @@
+package com.sky.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sky.cache.MenuSnapshot;
+import com.sky.entity.DishFlavor;
+import com.sky.json.JacksonObjectMapper;
+import com.sky.result.Result;
+import com.sky.vo.DishVO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 菜单接口基准测试: 响应数据快照 vs 每次请求序列化
+ * 每次请求序列化为快照之前的方式: 本地缓存中保存菜品列表, 每次请求由与消息转换器相同的JacksonObjectMapper序列化,
+ * 需要压缩时每次请求再做一次gzip(相当于开启server.compression);
+ * 快照为MenuSnapshot.writeTo, 直接写入保存好的json或gzip字节(json不超过压缩阈值时快照不压缩)。两条路径都写入MockHttpServletResponse
+ * 运行方式: mvn -pl sky-server -am test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sky.bench.MenuSnapshotBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MenuSnapshotBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new JacksonObjectMapper();
+
+    //一个分类下的菜品数量
+    @Param({"5", "20", "100"})
+    public int dishCount;
+
+    private List<DishVO> dishes;
+    private MenuSnapshot snapshot;
+    private MockHttpServletRequest gzipRequest;
+    private MockHttpServletRequest plainRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dishes = new ArrayList<>(dishCount);
+        for (long i = 1; i <= dishCount; i++) {
+            List<DishFlavor> flavors = new ArrayList<>();
+            flavors.add(DishFlavor.builder().id(i * 10).dishId(i).name("辣度").value("[\"不辣\",\"微辣\",\"中辣\",\"重辣\"]").build());
+            flavors.add(DishFlavor.builder().id(i * 10 + 1).dishId(i).name("忌口").value("[\"不要葱\",\"不要蒜\",\"不要香菜\"]").build());
+            dishes.add(DishVO.builder()
+                    .id(i)
+                    .name("菜品" + i)
+                    .categoryId(11L)
+                    .price(new BigDecimal("38.00"))
+                    .image("https://sky-take-out.oss-cn-beijing.aliyuncs.com/" + i + ".png")
+                    .description("精选食材现点现做的招牌菜品" + i)
+                    .status(1)
+                    .updateTime(LocalDateTime.of(2024, 1, 1, 12, 0))
+                    .categoryName("川菜")
+                    .flavors(flavors)
+                    .build());
+        }
+        snapshot = MenuSnapshot.of(Result.success(dishes));
+
+        gzipRequest = new MockHttpServletRequest();
+        gzipRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+        plainRequest = new MockHttpServletRequest();
+    }
+
+    @Benchmark
+    public byte[] perRequestJson() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        OBJECT_MAPPER.writeValue(response.getOutputStream(), Result.success(dishes));
+        return response.getContentAsByteArray();
+    }
+
+    @Benchmark
+    public byte[] perRequestGzip() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        try (OutputStream outputStream = new GZIPOutputStream(response.getOutputStream())) {
+            OBJECT_MAPPER.writeValue(outputStream, Result.success(dishes));
+        }
+        return response.getContentAsByteArray();
+    }
+
+    @Benchmark
+    public byte[] snapshotJson() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        snapshot.writeTo(plainRequest, response);
+        return response.getContentAsByteArray();
+    }
+
+    @Benchmark
+    public byte[] snapshotGzip() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        snapshot.writeTo(gzipRequest, response);
+        return response.getContentAsByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MenuSnapshotBenchmark.class.getSimpleName()).build()).run();
+    }
+}
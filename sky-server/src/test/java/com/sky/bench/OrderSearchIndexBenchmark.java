@@ -0,0 +1,114 @@
+package com.sky.bench;
+
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单号、手机号搜索基准测试: n-gram索引 vs like
+ * 生成100万笔订单(19位订单号、11位手机号), like路径按数据库处理前置通配符like的方式逐行做子串匹配(全表扫描),
+ * 索引路径为OrderSearchIndex.resolve计算候选订单id的耗时, 两者结果都是匹配的订单id
+ * 运行方式: mvn -pl sky-server -am test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sky.bench.OrderSearchIndexBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OrderSearchIndexBenchmark {
+
+    private static final int ORDER_COUNT = 1000000;
+
+    //手机尾号、手机号中间8位、订单号中间6位
+    @Param({"phone:5678", "phone:38001234", "number:123456"})
+    public String keyword;
+
+    private final List<Orders> ordersList = new ArrayList<>(ORDER_COUNT);
+    private OrderSearchIndex orderSearchIndex;
+    private String field;
+    private String value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        for (long id = 1; id <= ORDER_COUNT; id++) {
+            String number = String.valueOf(1700000000000000000L + random.nextInt(Integer.MAX_VALUE) * 100L + id % 100);
+            String phone = "1" + (30 + random.nextInt(60)) + String.format("%08d", random.nextInt(100000000));
+            ordersList.add(Orders.builder().id(id).number(number).phone(phone).build());
+        }
+
+        OrderMapper orderMapper = (OrderMapper) Proxy.newProxyInstance(OrderMapper.class.getClassLoader(),
+                new Class[]{OrderMapper.class}, (proxy, method, args) -> {
+                    if ("getSearchFieldsAfterId".equals(method.getName())) {
+                        int from = (int) (long) (Long) args[0];
+                        int to = Math.min(from + (Integer) args[1], ordersList.size());
+                        return from >= to ? Collections.emptyList() : ordersList.subList(from, to);
+                    }
+                    return null;
+                });
+        orderSearchIndex = new OrderSearchIndex();
+        ReflectionTestUtils.setField(orderSearchIndex, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(orderSearchIndex, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(orderSearchIndex, "maxIndexedOrders", ORDER_COUNT);
+        orderSearchIndex.init();
+
+        String[] parts = keyword.split(":");
+        field = parts[0];
+        value = parts[1];
+    }
+
+    @Benchmark
+    public List<Long> like() {
+        List<Long> ids = new ArrayList<>();
+        boolean phone = "phone".equals(field);
+        for (Orders orders : ordersList) {
+            String text = phone ? orders.getPhone() : orders.getNumber();
+            if (text.contains(value)) {
+                ids.add(orders.getId());
+            }
+        }
+        return ids;
+    }
+
+    @Benchmark
+    public List<Long> index() {
+        OrdersPageQueryDTO query = new OrdersPageQueryDTO();
+        if ("phone".equals(field)) {
+            query.setPhone(value);
+        } else {
+            query.setNumber(value);
+        }
+        orderSearchIndex.resolve(query);
+        return query.getCandidateIds();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OrderSearchIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
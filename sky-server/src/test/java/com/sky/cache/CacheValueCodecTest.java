@@ -0,0 +1,110 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.databind.exc.InvalidTypeIdException;
+import com.sky.entity.DishFlavor;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheValueCodecTest {
+
+    private final CacheValueCodec codec = new CacheValueCodec(1024);
+
+    @Test
+    void roundTripsPlainAndCompressedValues() {
+        List<DishVO> small = dishes(1);
+        byte[] plain = codec.serialize(small);
+        assertEquals('S', plain[0]);
+        assertEquals(0, plain[1]);
+        assertEquals(small, codec.deserialize(plain));
+
+        List<DishVO> large = dishes(50);
+        byte[] compressed = codec.serialize(large);
+        assertEquals('S', compressed[0]);
+        assertEquals(1, compressed[1]);
+        assertEquals(large, codec.deserialize(compressed));
+    }
+
+    @Test
+    void nullAndEmptyValues() {
+        assertEquals(0, codec.serialize(null).length);
+        assertNull(codec.deserialize(null));
+        assertNull(codec.deserialize(new byte[0]));
+    }
+
+    @Test
+    void readsJdkSerializedValues() {
+        //升级前redis中使用JDK序列化写入的数据
+        List<DishVO> dishes = dishes(3);
+        byte[] bytes = new JdkSerializationRedisSerializer().serialize(dishes);
+        assertEquals((byte) 0xAC, bytes[0]);
+
+        assertEquals(dishes, codec.deserialize(bytes));
+    }
+
+    @Test
+    void rejectsTypesOutsideAllowedPackages() {
+        byte[] bytes = json("{\"@class\":\"org.springframework.util.LinkedMultiValueMap\"}");
+
+        SerializationException e = assertThrows(SerializationException.class, () -> codec.deserialize(bytes));
+        assertInstanceOf(InvalidTypeIdException.class, e.getCause());
+        assertTrue(e.getCause().getMessage().contains("denied resolution"), e.getCause().getMessage());
+    }
+
+    @Test
+    void acceptsAllowedPackages() {
+        Object value = codec.deserialize(json("{\"@class\":\"com.sky.entity.DishFlavor\",\"name\":\"辣度\"}"));
+        assertEquals(DishFlavor.builder().name("辣度").build(), value);
+
+        assertEquals(Collections.singletonList("a"), codec.deserialize(json("[\"java.util.ArrayList\",[\"a\"]]")));
+    }
+
+    @Test
+    void rejectsUnknownFormat() {
+        assertThrows(SerializationException.class, () -> codec.deserialize(new byte[]{'X', 0, '{', '}'}));
+    }
+
+    private static byte[] json(String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[body.length + 2];
+        bytes[0] = 'S';
+        System.arraycopy(body, 0, bytes, 2, body.length);
+        return bytes;
+    }
+
+    private static List<DishVO> dishes(int count) {
+        List<DishVO> dishes = new ArrayList<>(count);
+        for (long i = 1; i <= count; i++) {
+            List<DishFlavor> flavors = new ArrayList<>();
+            flavors.add(DishFlavor.builder().id(i * 10).dishId(i).name("辣度").value("[\"不辣\",\"微辣\",\"中辣\",\"重辣\"]").build());
+            flavors.add(DishFlavor.builder().id(i * 10 + 1).dishId(i).name("忌口").value("[\"不要葱\",\"不要蒜\",\"不要香菜\"]").build());
+            dishes.add(DishVO.builder()
+                    .id(i)
+                    .name("菜品" + i)
+                    .categoryId(11L)
+                    .price(new BigDecimal("38.00"))
+                    .image("https://sky-take-out.oss-cn-beijing.aliyuncs.com/" + i + ".png")
+                    .description("招牌菜品" + i)
+                    .status(1)
+                    .updateTime(LocalDateTime.of(2024, 1, 1, 12, 0))
+                    .categoryName("川菜")
+                    .flavors(flavors)
+                    .build());
+        }
+        return dishes;
+    }
+}
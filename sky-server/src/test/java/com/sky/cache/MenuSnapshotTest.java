@@ -0,0 +1,106 @@
+package com.sky.cache;
+
+import com.sky.json.JacksonObjectMapper;
+import com.sky.result.Result;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MenuSnapshotTest {
+
+    @Test
+    void acceptsGzip() {
+        assertFalse(MenuSnapshot.acceptsGzip(null));
+        assertFalse(MenuSnapshot.acceptsGzip(""));
+        assertFalse(MenuSnapshot.acceptsGzip("identity"));
+        assertTrue(MenuSnapshot.acceptsGzip("gzip, deflate, br"));
+        assertTrue(MenuSnapshot.acceptsGzip("deflate, GZIP"));
+        assertTrue(MenuSnapshot.acceptsGzip("x-gzip"));
+        assertTrue(MenuSnapshot.acceptsGzip("*"));
+    }
+
+    @Test
+    void acceptsGzipByQuality() {
+        assertFalse(MenuSnapshot.acceptsGzip("gzip;q=0"));
+        assertFalse(MenuSnapshot.acceptsGzip("gzip; q=0.0, deflate"));
+        assertFalse(MenuSnapshot.acceptsGzip("*;q=0"));
+        assertFalse(MenuSnapshot.acceptsGzip("deflate, *;q=0"));
+        assertTrue(MenuSnapshot.acceptsGzip("gzip;q=0.5"));
+        assertTrue(MenuSnapshot.acceptsGzip("deflate;q=1.0, gzip;q=0.5"));
+        //明确列出的gzip优先于*
+        assertTrue(MenuSnapshot.acceptsGzip("gzip;q=0.5, *;q=0"));
+        assertFalse(MenuSnapshot.acceptsGzip("gzip;q=0, *"));
+        //q值无法解析时按不接受处理
+        assertFalse(MenuSnapshot.acceptsGzip("gzip;q=abc"));
+    }
+
+    @Test
+    void writesGzipBodyOnlyWhenAccepted() throws IOException {
+        Result<List<String>> result = Result.success(items(200));
+        byte[] json = new JacksonObjectMapper().writeValueAsBytes(result);
+        MenuSnapshot snapshot = MenuSnapshot.of(result);
+
+        MockHttpServletResponse gzipResponse = write(snapshot, "gzip, deflate");
+        assertEquals("gzip", gzipResponse.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, gzipResponse.getHeader(HttpHeaders.VARY));
+        assertEquals(gzipResponse.getContentAsByteArray().length, gzipResponse.getContentLength());
+        assertArrayEquals(json, gunzip(gzipResponse.getContentAsByteArray()));
+
+        MockHttpServletResponse plainResponse = write(snapshot, "gzip;q=0");
+        assertNull(plainResponse.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(json, plainResponse.getContentAsByteArray());
+    }
+
+    @Test
+    void smallBodyIsNotCompressed() throws IOException {
+        Result<List<String>> result = Result.success(Collections.singletonList("菜品"));
+        MockHttpServletResponse response = write(MenuSnapshot.of(result), "gzip");
+
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(new JacksonObjectMapper().writeValueAsBytes(result), response.getContentAsByteArray());
+    }
+
+    private static MockHttpServletResponse write(MenuSnapshot snapshot, String acceptEncoding) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        snapshot.writeTo(request, response);
+        return response;
+    }
+
+    private static List<String> items(int count) {
+        List<String> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add("菜品" + i);
+        }
+        return items;
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, n);
+            }
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,163 @@
+package com.sky.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private SingleFlight singleFlight;
+    private SimpleMeterRegistry meterRegistry;
+    private StringRedisTemplate stringRedisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private ExecutorService executorService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight();
+        ReflectionTestUtils.setField(singleFlight, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(singleFlight, "meterRegistry", meterRegistry);
+        executorService = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Object>> futures = submitCallers(() -> {
+            loads.incrementAndGet();
+            await(release);
+            return new Object();
+        });
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        Object first = futures.get(0).get(1, TimeUnit.SECONDS);
+        for (Future<Object> future : futures) {
+            assertSame(first, future.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.counter("cache.singleflight.loads", "cache", "dish").count());
+        //只有执行加载的线程获取redis锁
+        verify(valueOperations, times(1)).setIfAbsent(eq("lock:load:dish_1"), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void exceptionPropagatesToAllCallers() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("db down");
+        List<Future<Object>> futures = submitCallers(() -> {
+            loads.incrementAndGet();
+            await(release);
+            throw failure;
+        });
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<Object> future : futures) {
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                fail("expected loader failure");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void waitsForCacheFilledByOtherNode() {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+        when(stringRedisTemplate.hasKey("lock:load:dish_1")).thenReturn(true);
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger loads = new AtomicInteger();
+
+        String value = singleFlight.load("dish", "dish_1",
+                () -> reads.incrementAndGet() < 3 ? null : "cached",
+                () -> {
+                    loads.incrementAndGet();
+                    return "loaded";
+                });
+
+        assertEquals("cached", value);
+        assertEquals(0, loads.get());
+        assertEquals(1.0, meterRegistry.counter("cache.singleflight.coalesced", "cache", "dish", "scope", "remote").count());
+    }
+
+    @Test
+    void loadsDirectlyWhenRedisIsUnavailable() {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        assertEquals("loaded", singleFlight.load("dish", "dish_1", () -> null, () -> "loaded"));
+    }
+
+    private List<Future<Object>> submitCallers(Supplier<Object> loader) {
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(executorService.submit(() -> singleFlight.load("dish", "dish_1", () -> null, loader)));
+        }
+        return futures;
+    }
+
+    //等待其他调用方都在等待同一次加载
+    private void awaitCoalesced(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (meterRegistry.counter("cache.singleflight.coalesced", "cache", "dish", "scope", "local").count() < expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "callers were not coalesced");
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
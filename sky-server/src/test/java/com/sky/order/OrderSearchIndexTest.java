@@ -0,0 +1,146 @@
+package com.sky.order;
+
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.mapper.OrderMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderSearchIndexTest {
+
+    private final OrderMapper orderMapper = mock(OrderMapper.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderSearchIndex orderSearchIndex = new OrderSearchIndex();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(orderSearchIndex, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(orderSearchIndex, "meterRegistry", meterRegistry);
+        when(orderMapper.getSearchFieldsAfterId(anyLong(), anyInt())).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    void catchUpLoadsOrdersAfterIndexedMaxId() {
+        when(orderMapper.getSearchFieldsAfterId(eq(0L), anyInt())).thenReturn(Arrays.asList(
+                order(1L, "1001234567", "13800001111"),
+                order(2L, "1009876543", "13900002222")));
+        orderSearchIndex.init();
+
+        OrdersPageQueryDTO query = search("9876", null);
+        assertEquals(Collections.singletonList(2L), query.getCandidateIds());
+        assertEquals(2L, query.getIndexedMaxId());
+        assertNull(query.getIndexedMinId());
+
+        //其他节点新增的订单在下一次补齐时从indexedMaxId之后开始加载
+        when(orderMapper.getSearchFieldsAfterId(eq(2L), anyInt())).thenReturn(
+                Collections.singletonList(order(3L, "1009876000", "13700003333")));
+        assertEquals(1, orderSearchIndex.catchUp());
+        verify(orderMapper).getSearchFieldsAfterId(eq(2L), anyInt());
+
+        query = search("9876", null);
+        assertEquals(Arrays.asList(2L, 3L), query.getCandidateIds());
+        assertEquals(3L, query.getIndexedMaxId());
+    }
+
+    @Test
+    void newOrderEventIsSearchableImmediately() {
+        orderSearchIndex.init();
+        Orders orders = order(10L, "2001112222", "13512345678");
+        orderSearchIndex.onStatusChanged(new OrderStatusChangedEvent(10L, null, Orders.PENDING_PAYMENT, orders));
+
+        assertEquals(Collections.singletonList(10L), search(null, "12345678").getCandidateIds());
+        assertEquals(Collections.singletonList(10L), search("1112", "5123").getCandidateIds());
+        assertTrue(search("1112", "9999").getCandidateIds().isEmpty());
+    }
+
+    @Test
+    void cjkCharactersAreIndexedAsGrams() {
+        when(orderMapper.getSearchFieldsAfterId(eq(0L), anyInt())).thenReturn(Arrays.asList(
+                order(1L, "外卖订单一二三四五", null),
+                order(2L, "堂食订单一二三六七", null)));
+        orderSearchIndex.init();
+
+        assertEquals(Collections.singletonList(1L), search("二三四五", null).getCandidateIds());
+        assertEquals(Arrays.asList(1L, 2L), search("订单一二三", null).getCandidateIds());
+        assertTrue(search("订单四五六", null).getCandidateIds().isEmpty());
+    }
+
+    @Test
+    void keywordShorterThanGramFallsBackToLike() {
+        when(orderMapper.getSearchFieldsAfterId(eq(0L), anyInt())).thenReturn(
+                Collections.singletonList(order(1L, "1001234567", "13800001111")));
+        orderSearchIndex.init();
+
+        OrdersPageQueryDTO query = search("123", "111");
+        assertNull(query.getCandidateIds());
+        assertNull(query.getIndexedMaxId());
+        assertEquals(1.0, meterRegistry.counter("order.search.fallback", "reason", "short_keyword").count());
+    }
+
+    @Test
+    void searchBeforeLoadFallsBackToLike() {
+        assertNull(search("12345", null).getCandidateIds());
+        assertEquals(1.0, meterRegistry.counter("order.search.fallback", "reason", "not_ready").count());
+    }
+
+    @Test
+    void oldestOrdersAreTrimmedAboveCap() {
+        orderSearchIndex.maxIndexedOrders = 10;
+        List<Orders> ordersList = new ArrayList<>();
+        for (long id = 1; id <= 12; id++) {
+            ordersList.add(order(id, "30000000" + (id < 10 ? "0" + id : String.valueOf(id)), null));
+        }
+        when(orderMapper.getSearchFieldsAfterId(eq(0L), anyInt())).thenReturn(ordersList);
+        orderSearchIndex.init();
+
+        //超出上限10%(11笔)后移除最早的订单, 只保留id最大的10笔
+        OrdersPageQueryDTO query = search("3000", null);
+        assertEquals(3L, query.getIndexedMinId());
+        assertEquals(10, query.getCandidateIds().size());
+        assertEquals(3L, query.getCandidateIds().get(0));
+        assertTrue(search("0000002", null).getCandidateIds().isEmpty());
+    }
+
+    @Test
+    void startupSkipsOrdersOlderThanCap() {
+        orderSearchIndex.maxIndexedOrders = 100;
+        when(orderMapper.getIdFromLatest(99)).thenReturn(500L);
+        when(orderMapper.getSearchFieldsAfterId(eq(499L), anyInt())).thenReturn(
+                Collections.singletonList(order(500L, "4000000500", null)));
+        orderSearchIndex.init();
+
+        OrdersPageQueryDTO query = search("0500", null);
+        assertEquals(Collections.singletonList(500L), query.getCandidateIds());
+        assertEquals(500L, query.getIndexedMinId());
+    }
+
+    private OrdersPageQueryDTO search(String number, String phone) {
+        OrdersPageQueryDTO query = new OrdersPageQueryDTO();
+        query.setNumber(number);
+        query.setPhone(phone);
+        orderSearchIndex.resolve(query);
+        return query;
+    }
+
+    private Orders order(Long id, String number, String phone) {
+        return Orders.builder().id(id).number(number).phone(phone).build();
+    }
+}
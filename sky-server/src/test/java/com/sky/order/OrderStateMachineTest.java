@@ -0,0 +1,136 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.mapper.OrderMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderStateMachineTest {
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+    @InjectMocks
+    private OrderStateMachine orderStateMachine;
+
+    @Test
+    void terminalStatusesHaveNoTransitions() {
+        for (Integer to : orderStateMachine.getTransitions().keySet()) {
+            assertFalse(orderStateMachine.canTransit(Orders.COMPLETED, to));
+            assertFalse(orderStateMachine.canTransit(Orders.CANCELLED, to));
+        }
+    }
+
+    @Test
+    void skippingStatusesIsIllegal() {
+        assertFalse(orderStateMachine.canTransit(Orders.PENDING_PAYMENT, Orders.CONFIRMED));
+        assertFalse(orderStateMachine.canTransit(Orders.TO_BE_CONFIRMED, Orders.COMPLETED));
+        assertFalse(orderStateMachine.canTransit(Orders.DELIVERY_IN_PROGRESS, Orders.CONFIRMED));
+        assertFalse(orderStateMachine.canTransit(null, Orders.TO_BE_CONFIRMED));
+    }
+
+    @Test
+    void illegalTransitionDoesNotTouchDatabase() {
+        Orders orders = Orders.builder().id(1L).status(Orders.COMPLETED).build();
+
+        assertFalse(orderStateMachine.transit(orders, Orders.PENDING_PAYMENT));
+        verifyNoInteractions(orderMapper, applicationEventPublisher);
+    }
+
+    @Test
+    void cancelledHasEveryActiveStatusAsSource() {
+        assertEquals(new LinkedHashSet<>(Arrays.asList(Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED,
+                        Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS)),
+                orderStateMachine.getSourceStatuses(Orders.CANCELLED));
+    }
+
+    @Test
+    void multiSourceTargetRequiresExplicitFromStatus() {
+        Orders orders = Orders.builder().id(1L).status(Orders.CANCELLED).build();
+
+        assertThrows(IllegalArgumentException.class, () -> orderStateMachine.transit(orders));
+        verifyNoInteractions(orderMapper);
+    }
+
+    @Test
+    void cancelFromEachSourceUsesThatStatusAsCondition() {
+        Orders orders = Orders.builder().id(1L).status(Orders.CANCELLED).build();
+        when(orderMapper.transit(eq(orders), anyCollection())).thenReturn(1);
+
+        for (Integer from : orderStateMachine.getSourceStatuses(Orders.CANCELLED)) {
+            assertTrue(orderStateMachine.transit(orders, from));
+            verify(orderMapper).transit(orders, Collections.singletonList(from));
+        }
+    }
+
+    @Test
+    void singleSourceTransitPublishesEvent() {
+        Orders orders = Orders.builder().id(1L).status(Orders.CONFIRMED).build();
+        when(orderMapper.transit(orders, Collections.singletonList(Orders.TO_BE_CONFIRMED))).thenReturn(1);
+
+        assertTrue(orderStateMachine.transit(orders));
+
+        ArgumentCaptor<OrderStatusChangedEvent> captor = ArgumentCaptor.forClass(OrderStatusChangedEvent.class);
+        verify(applicationEventPublisher).publishEvent(captor.capture());
+        assertEquals(Orders.TO_BE_CONFIRMED, captor.getValue().getFromStatus());
+        assertEquals(Orders.CONFIRMED, captor.getValue().getToStatus());
+    }
+
+    @Test
+    void loadedOrderIsPublishedAsSnapshot() {
+        Orders current = Orders.builder().id(1L).status(Orders.TO_BE_CONFIRMED).orderTime(LocalDateTime.now()).build();
+        Orders orders = Orders.builder().id(1L).status(Orders.CANCELLED).build();
+        when(orderMapper.transit(orders, Collections.singletonList(Orders.TO_BE_CONFIRMED))).thenReturn(1);
+
+        assertTrue(orderStateMachine.transit(orders, current));
+
+        ArgumentCaptor<OrderStatusChangedEvent> captor = ArgumentCaptor.forClass(OrderStatusChangedEvent.class);
+        verify(applicationEventPublisher).publishEvent(captor.capture());
+        assertEquals(Orders.TO_BE_CONFIRMED, captor.getValue().getFromStatus());
+        assertSame(current, captor.getValue().getOrders());
+    }
+
+    @Test
+    void lostRaceReturnsFalseWithoutEvent() {
+        Orders orders = Orders.builder().id(1L).status(Orders.CONFIRMED).build();
+        when(orderMapper.transit(eq(orders), anyCollection())).thenReturn(0);
+
+        assertFalse(orderStateMachine.transit(orders));
+        verify(applicationEventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void illegalBatchTransitionIsRejected() {
+        Orders orders = Orders.builder().status(Orders.COMPLETED).build();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> orderStateMachine.transitBatch(orders, Orders.PENDING_PAYMENT, LocalDateTime.now(), 100, 1000));
+        verifyNoInteractions(orderMapper);
+    }
+}
@@ -0,0 +1,91 @@
+package com.sky.order;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private static final long TICK_MS = 10;
+    //每层4格: 第一层40ms, 第二层160ms, 第三层640ms
+    private static final int WHEEL_SIZE = 4;
+
+    private final TimingWheel timingWheel = new TimingWheel("test", TICK_MS, WHEEL_SIZE, 1);
+
+    @AfterEach
+    void tearDown() {
+        timingWheel.shutdown();
+    }
+
+    @Test
+    void tasksRunInDeadlineOrderAcrossLevels() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        //依次落在第三层、第一层、第二层、第一层
+        List<Long> delays = Arrays.asList(400L, 25L, 120L, 5L);
+        List<Long> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(delays.size());
+        for (Long delay : delays) {
+            timingWheel.schedule(now + delay, () -> {
+                executed.add(delay);
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(5L, 25L, 120L, 400L), new ArrayList<>(executed));
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    void overflowTaskCascadesDownAndRunsAtDeadline() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 500;
+        long[] ranAt = new long[1];
+        CountDownLatch latch = new CountDownLatch(1);
+        timingWheel.schedule(deadline, () -> {
+            ranAt[0] = System.currentTimeMillis();
+            latch.countDown();
+        });
+        assertEquals(1, timingWheel.size());
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        //格子的到期时间按tickMs向下取整, 最多提前一格
+        assertTrue(ranAt[0] >= deadline - TICK_MS, "提前执行了" + (deadline - ranAt[0]) + "ms");
+        assertTrue(ranAt[0] < deadline + 500, "延迟了" + (ranAt[0] - deadline) + "ms");
+    }
+
+    @Test
+    void cancelledTaskInOverflowWheelNeverRuns() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        CountDownLatch cancelledRan = new CountDownLatch(1);
+        CountDownLatch laterRan = new CountDownLatch(1);
+        TimingWheel.Timeout timeout = timingWheel.schedule(now + 200, cancelledRan::countDown);
+        timingWheel.schedule(now + 300, laterRan::countDown);
+
+        timeout.cancel();
+        assertTrue(timeout.isCancelled());
+        assertEquals(1, timingWheel.size());
+
+        assertTrue(laterRan.await(2, TimeUnit.SECONDS));
+        assertFalse(cancelledRan.await(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    void pastDeadlineRunsImmediately() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        timingWheel.schedule(System.currentTimeMillis() - 1000, latch::countDown);
+
+        assertTrue(latch.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, timingWheel.size());
+    }
+}
@@ -0,0 +1,80 @@
+package com.sky.report;
+
+import com.sky.properties.ReportQueryProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelQueryExecutorTest {
+
+    private ParallelQueryExecutor parallelQueryExecutor;
+
+    @BeforeEach
+    void setUp() {
+        ReportQueryProperties properties = new ReportQueryProperties();
+        properties.setThreads(2);
+        properties.setQueueCapacity(10);
+        properties.setTimeoutMillis(100);
+        parallelQueryExecutor = new ParallelQueryExecutor();
+        ReflectionTestUtils.setField(parallelQueryExecutor, "reportQueryProperties", properties);
+        ReflectionTestUtils.setField(parallelQueryExecutor, "meterRegistry", new SimpleMeterRegistry());
+        parallelQueryExecutor.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        parallelQueryExecutor.shutdown();
+    }
+
+    @Test
+    void successfulQueriesAreNotDegraded() {
+        ParallelQueryExecutor.Query<Integer> first = parallelQueryExecutor.submit("first", () -> 1, 0);
+        ParallelQueryExecutor.Query<Integer> second = parallelQueryExecutor.submit("second", () -> 2, 0);
+
+        assertEquals(1, first.get());
+        assertEquals(2, second.get());
+        assertNull(ParallelQueryExecutor.degraded(first, second));
+    }
+
+    @Test
+    void failedAndTimedOutQueriesAreReported() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(1);
+        ParallelQueryExecutor.Query<Integer> slow = parallelQueryExecutor.submit("slow", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            finished.countDown();
+            return 1;
+        }, -1);
+        ParallelQueryExecutor.Query<Integer> failed = parallelQueryExecutor.submit("failed", () -> {
+            throw new IllegalStateException();
+        }, -2);
+        ParallelQueryExecutor.Query<Integer> ok = parallelQueryExecutor.submit("ok", () -> 3, 0);
+
+        assertEquals(-1, slow.get());
+        assertEquals(-2, failed.get());
+        assertEquals(3, ok.get());
+        assertEquals(Arrays.asList("slow", "failed"), ParallelQueryExecutor.degraded(slow, failed, ok));
+
+        //超时的查询不会被中断, 继续执行到结束
+        release.countDown();
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+        assertFalse(interrupted.get());
+    }
+}
@@ -0,0 +1,97 @@
+package com.sky.report;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.sky.cache.NearCacheManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class ReportDayCacheTest {
+
+    private static final LocalDate BEGIN = LocalDate.of(2024, 1, 1);
+    private static final LocalDate END = LocalDate.of(2024, 1, 3);
+
+    private ReportDayCache reportDayCache;
+    private Cache<Object, Object> goodsSalesCache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        NearCacheManager nearCacheManager = mock(NearCacheManager.class);
+        reportDayCache = new ReportDayCache();
+        ReflectionTestUtils.setField(reportDayCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(reportDayCache, "nearCacheManager", nearCacheManager);
+        reportDayCache.init();
+
+        ArgumentCaptor<Cache<Object, Object>> captor = ArgumentCaptor.forClass(Cache.class);
+        verify(nearCacheManager).register(eq("reportDay.GOODS_SALES"), captor.capture());
+        goodsSalesCache = captor.getValue();
+    }
+
+    @Test
+    void loadsOnlyMissingDays() {
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals(Arrays.asList("2024-01-01", "2024-01-02", "2024-01-03"), get(loads));
+        assertEquals(Arrays.asList("2024-01-01", "2024-01-02", "2024-01-03"), get(loads));
+        assertEquals(1, loads.get());
+
+        goodsSalesCache.invalidate(LocalDate.of(2024, 1, 2));
+        get(loads);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictionDuringLoadIsNotOverwritten() {
+        AtomicInteger loads = new AtomicInteger();
+        //加载期间其他节点发来清理消息, 与NearCacheManager.onMessage的处理方式相同
+        reportDayCache.getDays(ReportDayCache.ReportType.GOODS_SALES, BEGIN, END, (begin, end) -> {
+            loads.incrementAndGet();
+            goodsSalesCache.asMap().keySet().removeIf(key -> "2024-01-02".equals(String.valueOf(key)));
+            return days(begin, end);
+        });
+
+        get(loads);
+        assertEquals(2, loads.get());
+        get(loads);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void failedLoadLeavesNoMarker() {
+        try {
+            reportDayCache.getDays(ReportDayCache.ReportType.GOODS_SALES, BEGIN, END, (begin, end) -> {
+                throw new IllegalStateException();
+            });
+        } catch (IllegalStateException ignored) {
+        }
+        assertEquals(0, goodsSalesCache.asMap().size());
+    }
+
+    private List<String> get(AtomicInteger loads) {
+        return reportDayCache.getDays(ReportDayCache.ReportType.GOODS_SALES, BEGIN, END, (begin, end) -> {
+            loads.incrementAndGet();
+            return days(begin, end);
+        });
+    }
+
+    private static List<String> days(LocalDate begin, LocalDate end) {
+        List<String> days = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            days.add(date.toString());
+        }
+        return days;
+    }
+}
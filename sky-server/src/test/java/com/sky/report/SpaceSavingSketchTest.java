@@ -0,0 +1,76 @@
+package com.sky.report;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingSketchTest {
+
+    @Test
+    void countsAreExactWhileUnderCapacity() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(3);
+        sketch.offer("a", 2);
+        sketch.offer("b", 5);
+        sketch.offer("a", 1);
+        sketch.offer("c", 4);
+
+        Map<String, Long> totals = new HashMap<>();
+        assertTrue(sketch.mergeInto(totals));
+        assertEquals(3L, totals.get("a"));
+        assertEquals(5L, totals.get("b"));
+        assertEquals(4L, totals.get("c"));
+    }
+
+    @Test
+    void replacementClearsExactFlagAndInheritsMinimum() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        sketch.offer("a", 5);
+        sketch.offer("b", 2);
+        sketch.offer("c", 1);
+
+        Map<String, Long> totals = new HashMap<>();
+        assertFalse(sketch.mergeInto(totals));
+        assertEquals(2, totals.size());
+        assertEquals(5L, totals.get("a"));
+        //c替换了计数最小的b, 从b的计数开始累加
+        assertEquals(3L, totals.get("c"));
+    }
+
+    @Test
+    void overCountIsBoundedByTotalOverCapacity() {
+        int capacity = 16;
+        SpaceSavingSketch sketch = new SpaceSavingSketch(capacity);
+        Map<String, Long> actual = new HashMap<>();
+        Random random = new Random(42);
+        long total = 0;
+        for (int i = 0; i < 20000; i++) {
+            //少数商品销量很高, 大量商品偶尔售出
+            String name = random.nextBoolean() ? "hot" + random.nextInt(4) : "item" + random.nextInt(500);
+            int number = 1 + random.nextInt(3);
+            sketch.offer(name, number);
+            actual.merge(name, (long) number, Long::sum);
+            total += number;
+        }
+
+        Map<String, Long> estimated = new HashMap<>();
+        assertFalse(sketch.mergeInto(estimated));
+        long bound = total / capacity;
+        for (Map.Entry<String, Long> entry : estimated.entrySet()) {
+            long real = actual.get(entry.getKey());
+            assertTrue(entry.getValue() >= real, entry.getKey());
+            assertTrue(entry.getValue() - real <= bound, entry.getKey());
+        }
+        //真实销量超过 总销量/capacity 的商品一定被保留
+        for (Map.Entry<String, Long> entry : actual.entrySet()) {
+            if (entry.getValue() > bound) {
+                assertTrue(estimated.containsKey(entry.getKey()), entry.getKey());
+            }
+        }
+    }
+}